@@ -20,9 +20,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -51,7 +54,10 @@ import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.FileUtils;
 import org.ops4j.pax.construct.util.BndUtils;
 import org.ops4j.pax.construct.util.BndUtils.Bnd;
+import org.ops4j.pax.construct.util.DependencyCache;
 import org.ops4j.pax.construct.util.DirUtils;
+import org.ops4j.pax.construct.util.ManifestCache;
+import org.ops4j.pax.construct.util.PomCache;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
 
@@ -70,6 +76,11 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
      */
     public static final String PAX_CONSTRUCT_GROUP_ID = "org.ops4j.pax.construct";
 
+    /**
+     * Plugin context key
+     */
+    private static final String ARCHETYPE_CACHE_KEY = "pax.archetype.cache";
+
     /**
      * Component factory for Maven archetypes.
      * 
@@ -231,6 +242,11 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
      */
     private Properties m_archetypeProperties;
 
+    /**
+     * Archetype details cached during this session, only bound while the mojo is executing
+     */
+    private ArchetypeCache m_archetypeCache;
+
     /**
      * @return component factory for Maven artifacts
      */
@@ -322,27 +338,65 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
     public final void execute()
         throws MojoExecutionException
     {
-        updateFields();
-        createModuleTree();
+        PomCache.bind( this );
+        bindArchetypeCache();
 
-        /*
-         * support repeated creation of projects
-         */
-        do
+        try
         {
-            scheduleCustomArchetypes();
-            updateExtensionFields();
+            updateFields();
+            createModuleTree();
 
-            prepareTarget();
-            generateArchetype();
-            cacheSettings();
+            /*
+             * support repeated creation of projects
+             */
+            do
+            {
+                scheduleCustomArchetypes();
+                updateExtensionFields();
+
+                prepareTarget();
+                generateArchetype();
+                cacheSettings();
+
+                runCustomArchetypes();
+
+                postProcess();
+                cleanUp();
+
+            } while( createMoreArtifacts() );
+        }
+        finally
+        {
+            m_archetypeCache = null;
+            PomCache.release( this );
+            ManifestCache.flush();
+            DependencyCache.flush();
+        }
+    }
 
-            runCustomArchetypes();
+    /**
+     * Use the archetype cache from the plugin context, so it lasts as long as the current session
+     */
+    private void bindArchetypeCache()
+    {
+        Map context = getPluginContext();
 
-            postProcess();
-            cleanUp();
+        ArchetypeCache cache = null;
+        if( null != context )
+        {
+            cache = (ArchetypeCache) context.get( ARCHETYPE_CACHE_KEY );
+        }
 
-        } while( createMoreArtifacts() );
+        if( null == cache )
+        {
+            cache = new ArchetypeCache();
+            if( null != context )
+            {
+                context.put( ARCHETYPE_CACHE_KEY, cache );
+            }
+        }
+
+        m_archetypeCache = cache;
     }
 
     /**
@@ -495,6 +549,33 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
      * @return compatible archetype version
      */
     private String getArchetypeVersion( String groupId, String artifactId )
+    {
+        String key = groupId + ':' + artifactId + ':' + pluginVersion;
+        Map versions = m_archetypeCache.m_versions;
+        synchronized( versions )
+        {
+            String cachedVersion = (String) versions.get( key );
+            if( null != cachedVersion )
+            {
+                return cachedVersion;
+            }
+        }
+
+        String selectedVersion = selectArchetypeVersion( groupId, artifactId );
+        synchronized( versions )
+        {
+            versions.put( key, selectedVersion );
+        }
+
+        return selectedVersion;
+    }
+
+    /**
+     * @param groupId archetype group id
+     * @param artifactId archetype artifact id
+     * @return compatible archetype version
+     */
+    private String selectArchetypeVersion( String groupId, String artifactId )
     {
         // special case when plugin is a snapshot - use the local archetype snapshot, if available
         Artifact artifact = m_factory.createBuildArtifact( groupId, artifactId, pluginVersion, "jar" );
@@ -904,8 +985,39 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
             String artifactId = getArchetypeProperty( "archetypeArtifactId" );
             String version = getArchetypeProperty( "archetypeVersion" );
 
+            String archetypeId = groupId + ':' + artifactId + ':' + version;
+
+            Set resolvedIds = m_archetypeCache.m_resolvedIds;
+
+            boolean resolved;
+            synchronized( resolvedIds )
+            {
+                resolved = resolvedIds.contains( archetypeId );
+            }
+
+            if( resolved )
+            {
+                try
+                {
+                    // already in the local repository, no need to check the remote repositories again
+                    m_archetype.createArchetype( groupId, artifactId, version, m_localRepo, Collections.EMPTY_LIST,
+                        m_archetypeProperties );
+
+                    return;
+                }
+                catch( ArchetypeNotFoundException e )
+                {
+                    getLog().debug( "Archetype " + archetypeId + " no longer in local repository" );
+                }
+            }
+
             m_archetype.createArchetype( groupId, artifactId, version, m_localRepo, m_remoteRepos,
                 m_archetypeProperties );
+
+            synchronized( resolvedIds )
+            {
+                resolvedIds.add( archetypeId );
+            }
         }
         catch( ArchetypeNotFoundException e )
         {
@@ -935,4 +1047,29 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
 
         return m_repoFactory.createArtifactRepository( id, url, m_defaultLayout, snapshots, releases );
     }
+
+    /**
+     * Archetype details cached in the plugin context for the rest of the session
+     */
+    private static final class ArchetypeCache
+    {
+        /**
+         * Maps groupId:artifactId:pluginVersion to the selected archetype version, so we only search metadata once
+         */
+        final Map m_versions;
+
+        /**
+         * Archetypes (groupId:artifactId:version) already resolved to the local repository
+         */
+        final Set m_resolvedIds;
+
+        /**
+         * Create an empty cache
+         */
+        ArchetypeCache()
+        {
+            m_versions = new HashMap();
+            m_resolvedIds = new HashSet();
+        }
+    }
 }
@@ -16,22 +16,32 @@ package org.ops4j.pax.construct.archetype;
  * limitations under the License.
  */
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.resolver.AbstractArtifactResolutionException;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.artifact.InvalidDependencyVersionException;
+import org.codehaus.plexus.util.IOUtil;
 import org.ops4j.pax.construct.util.BndUtils.Bnd;
+import org.ops4j.pax.construct.util.DependencyCache;
+import org.ops4j.pax.construct.util.DependencyGraph;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
+import org.ops4j.pax.construct.util.WorkerPool;
 
 /**
  * Create a new wrapper project inside an existing Pax-Construct OSGi project
@@ -40,6 +50,12 @@ import org.ops4j.pax.construct.util.PomUtils.Pom;
  *   mvn pax:wrap-jar [-DgroupId=...] -DartifactId=... [-Dversion=...] [-Dclassifier=...]
  * </pre></code>
  * 
+ * or wrap a whole batch of artifacts in one go
+ * 
+ * <code><pre>
+ *   mvn pax:wrap-jar -Dartifacts=groupId:artifactId:version,... [-DartifactFile=...]
+ * </pre></code>
+ * 
  * or create a standalone version which doesn't require an existing project
  * 
  * <code><pre>
@@ -106,7 +122,6 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
      * The artifactId of the artifact to be wrapped.
      * 
      * @parameter expression="${artifactId}"
-     * @required
      */
     private String artifactId;
 
@@ -124,6 +139,27 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
      */
     private String classifier;
 
+    /**
+     * Comma-separated list of artifacts (use groupId:artifactId:version) to wrap in the same run.
+     * 
+     * @parameter expression="${artifacts}"
+     */
+    private String artifacts;
+
+    /**
+     * File listing artifacts (use groupId:artifactId:version) to wrap in the same run, one per line.
+     * 
+     * @parameter expression="${artifactFile}"
+     */
+    private File artifactFile;
+
+    /**
+     * Number of threads used to resolve batches of artifacts, zero or less means use all available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
     /**
      * Comma-separated list of artifacts (use groupId:artifactId) to exclude from wrapping.
      * 
@@ -209,20 +245,15 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
     private boolean addVersion;
 
     /**
-     * A list of artifacts (groupId:artifactId:version) to be wrapped
+     * Artifacts (groupId:artifactId:version) to be wrapped, each artifact is only wrapped once
      */
-    private List m_candidateIds;
+    private DependencyGraph m_wrappedGraph;
 
     /**
      * A list of artifacts (groupId:artifactId) that have been explicitly excluded.
      */
     private Set m_excludedIds;
 
-    /**
-     * A list of artifacts (groupId:artifactId:version) that have already been processed.
-     */
-    private Set m_wrappedIds;
-
     /**
      * {@inheritDoc}
      */
@@ -237,34 +268,31 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
     protected void updateExtensionFields()
         throws MojoExecutionException
     {
-        populateMissingFields();
-
-        if( null == m_candidateIds )
+        if( null == m_wrappedGraph )
         {
             setMainArchetype( OSGI_WRAPPER_ARCHETYPE_ID );
 
             // only need to set this once: the same groupId is used for extra wrappers
             setArchetypeProperty( "groupId", getInternalGroupId( bundleGroupId ) );
 
-            // bootstrap with the initial wrapper artifact
-            String rootId = groupId + ':' + artifactId + ':' + version;
-            if( PomUtils.isNotEmpty( classifier ) )
-            {
-                rootId = rootId + ':' + classifier;
-            }
-
-            m_candidateIds = new ArrayList();
+            // wrappers only include the version in their name when asked, otherwise they would clash
+            m_wrappedGraph = new DependencyGraph( addVersion );
             m_excludedIds = new HashSet();
-            m_wrappedIds = new HashSet();
 
             excludeCandidates( exclusions );
 
             // kickstart the wrapping
-            m_candidateIds.add( rootId );
-            m_wrappedIds.add( rootId );
+            for( Iterator i = getRootIds().iterator(); i.hasNext(); )
+            {
+                String rootId = (String) i.next();
+                if( !m_wrappedGraph.schedule( rootId ) )
+                {
+                    warnSkippedRoot( rootId );
+                }
+            }
         }
 
-        String id = (String) m_candidateIds.remove( 0 );
+        String id = m_wrappedGraph.next();
         String[] fields = id.split( ":" );
 
         groupId = fields[0];
@@ -355,6 +383,163 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
         return artifactId;
     }
 
+    /**
+     * Explain why an initial artifact won't be wrapped
+     * 
+     * @param rootId initial artifact (groupId:artifactId:version[:classifier])
+     */
+    private void warnSkippedRoot( String rootId )
+    {
+        String[] fields = rootId.split( ":" );
+
+        String existingVersion = m_wrappedGraph.getVersion( fields[0], fields[1] );
+        if( null == existingVersion )
+        {
+            getLog().warn( "Skipping excluded artifact " + rootId );
+        }
+        else if( !existingVersion.equals( fields[2] ) )
+        {
+            getLog().warn( "Skipping " + rootId + " as version " + existingVersion + " is already being wrapped,"
+                + " use -DaddVersion to wrap both versions" );
+        }
+        else
+        {
+            getLog().warn( "Skipping duplicate artifact " + rootId );
+        }
+    }
+
+    /**
+     * @return initial artifacts (groupId:artifactId:version[:classifier]) to be wrapped
+     * @throws MojoExecutionException
+     */
+    private List getRootIds()
+        throws MojoExecutionException
+    {
+        List rootIds = new ArrayList();
+
+        if( PomUtils.isNotEmpty( artifactId ) )
+        {
+            populateMissingFields();
+
+            // bootstrap with the initial wrapper artifact
+            String rootId = groupId + ':' + artifactId + ':' + version;
+            if( PomUtils.isNotEmpty( classifier ) )
+            {
+                rootId = rootId + ':' + classifier;
+            }
+
+            rootIds.add( rootId );
+        }
+
+        rootIds.addAll( resolveBatch( readBatch() ) );
+
+        if( rootIds.isEmpty() )
+        {
+            throw new MojoExecutionException( "Nothing to wrap, please provide an artifactId or list of artifacts" );
+        }
+
+        return rootIds;
+    }
+
+    /**
+     * @return batch of artifacts (groupId:artifactId[:version[:classifier]]) from the command-line and artifact file
+     * @throws MojoExecutionException
+     */
+    private List readBatch()
+        throws MojoExecutionException
+    {
+        List batch = new ArrayList();
+
+        if( PomUtils.isNotEmpty( artifacts ) )
+        {
+            String[] ids = artifacts.split( "," );
+            for( int i = 0; i < ids.length; i++ )
+            {
+                if( ids[i].trim().length() > 0 )
+                {
+                    batch.add( ids[i].trim() );
+                }
+            }
+        }
+
+        if( null != artifactFile )
+        {
+            BufferedReader reader = null;
+            try
+            {
+                reader = new BufferedReader( new FileReader( artifactFile ) );
+                for( String line = reader.readLine(); null != line; line = reader.readLine() )
+                {
+                    // ignore blank lines and comments
+                    String id = line.trim();
+                    if( id.length() > 0 && !id.startsWith( "#" ) )
+                    {
+                        batch.add( id );
+                    }
+                }
+            }
+            catch( IOException e )
+            {
+                throw new MojoExecutionException( "Unable to read list of artifacts from " + artifactFile, e );
+            }
+            finally
+            {
+                IOUtil.close( reader );
+            }
+        }
+
+        return batch;
+    }
+
+    /**
+     * Fill in missing versions and download POMs for the whole batch up-front, so wrappers can be created in one go
+     * 
+     * @param batch list of artifacts (groupId:artifactId[:version[:classifier]])
+     * @return list of resolved artifacts (groupId:artifactId:version[:classifier])
+     */
+    private List resolveBatch( List batch )
+    {
+        List resolvedIds = new ArrayList();
+        if( batch.isEmpty() )
+        {
+            return resolvedIds;
+        }
+
+        WorkerPool pool = new WorkerPool( "pax-wrap", WorkerPool.getWorkerCount( threads ) );
+
+        try
+        {
+            List entries = new ArrayList();
+            for( Iterator i = batch.iterator(); i.hasNext(); )
+            {
+                BatchEntry entry = new BatchEntry( (String) i.next() );
+                pool.execute( entry );
+                entries.add( entry );
+            }
+
+            pool.join();
+
+            for( Iterator i = entries.iterator(); i.hasNext(); )
+            {
+                BatchEntry entry = (BatchEntry) i.next();
+                if( null != entry.m_problem )
+                {
+                    getLog().warn( "Skipping " + entry.m_id + ": " + entry.m_problem );
+                }
+                else
+                {
+                    resolvedIds.add( entry.getResolvedId() );
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        return resolvedIds;
+    }
+
     /**
      * Populate missing fields with information from the Maven repository
      * 
@@ -455,7 +640,7 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
      */
     protected boolean createMoreArtifacts()
     {
-        return !m_candidateIds.isEmpty();
+        return m_wrappedGraph.hasNext();
     }
 
     /**
@@ -469,23 +654,25 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
          * Use a local list to capture dependencies that are type POM, ie. collections of dependencies. These POM
          * artifacts don't require wrapping, so we must store and process them locally in the following loop...
          */
-        List dependencyPoms = new ArrayList();
+        LinkedList dependencyPoms = new LinkedList();
 
         // use the wrapped artifact's POM to kick things off
         dependencyPoms.add( getFactory().createProjectArtifact( groupId, artifactId, version ) );
 
         while( !dependencyPoms.isEmpty() )
         {
-            Artifact pomArtifact = (Artifact) dependencyPoms.remove( 0 );
+            Artifact pomArtifact = (Artifact) dependencyPoms.removeFirst();
 
             try
             {
                 // Standard Maven code to get direct dependencies for a given POM
-                MavenProject p = m_projectBuilder.buildFromRepository( pomArtifact, getRemoteRepos(), getLocalRepo() );
+                MavenProject p =
+                    DependencyCache.buildFromRepository( m_projectBuilder, getFactory(), pomArtifact, getRemoteRepos(),
+                        getLocalRepo() );
                 Set artifacts = p.createArtifacts( getFactory(), null, null );
 
                 // look for new artifacts to wrap
-                dependencyPoms.addAll( processDependencies( pom, artifacts ) );
+                processDependencies( pom, artifacts, dependencyPoms );
             }
             catch( ProjectBuildingException e )
             {
@@ -503,11 +690,10 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
      * 
      * @param pom Maven project model
      * @param artifacts list of potential artifacts to be wrapped
-     * @return list of POM artifacts discovered while processing
+     * @param dependencyPoms queue of POM artifacts discovered while processing
      */
-    private List processDependencies( Pom pom, Set artifacts )
+    private void processDependencies( Pom pom, Set artifacts, LinkedList dependencyPoms )
     {
-        List newDependencyPoms = new ArrayList();
         for( Iterator i = artifacts.iterator(); i.hasNext(); )
         {
             Artifact artifact = (Artifact) i.next();
@@ -518,43 +704,15 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
                 // process POM artifacts in parent loop...
                 if( "pom".equals( artifact.getType() ) )
                 {
-                    newDependencyPoms.add( artifact );
+                    dependencyPoms.addLast( artifact );
                 }
                 // copy dependency to current wrapper pom (not all require wrapping)
                 else if( addWrapperDependency( pom, artifact ) )
                 {
-                    m_candidateIds.add( candidateId );
-                    m_wrappedIds.add( candidateId );
+                    m_wrappedGraph.schedule( candidateId );
                 }
             }
         }
-
-        return newDependencyPoms;
-    }
-
-    /**
-     * Get the first version of the given artifact to be wrapped during this cycle
-     * 
-     * @param candidateId potential new candidate
-     * @return first version wrapped, or null if it has not been wrapped
-     */
-    private String getWrappedVersion( String candidateId )
-    {
-        // ignore version field while searching...
-        int versionIndex = candidateId.lastIndexOf( ':' );
-        String prefix = candidateId.substring( 0, 1 + versionIndex );
-
-        for( Iterator i = m_wrappedIds.iterator(); i.hasNext(); )
-        {
-            String wrappedId = (String) i.next();
-            if( wrappedId.startsWith( prefix ) )
-            {
-                // return version field from the id
-                return wrappedId.substring( prefix.length() );
-            }
-        }
-
-        return null;
     }
 
     /**
@@ -615,9 +773,15 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
             pom.addDependency( getBundleDependency( artifact ), true );
             return false;
         }
+        else if( addVersion )
+        {
+            // each version gets its own wrapper, which is only scheduled once
+            pom.addDependency( getWrappedDependency( artifact ), true );
+            return true;
+        }
         else
         {
-            String existingVersion = getWrappedVersion( getCandidateId( artifact ) );
+            String existingVersion = m_wrappedGraph.getVersion( artifact.getGroupId(), artifact.getArtifactId() );
             if( null != existingVersion )
             {
                 /*
@@ -719,4 +883,119 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
             pom.addExclusion( fields[0], fields[1], true );
         }
     }
+
+    /**
+     * Artifact from a batch, which can be resolved in the background
+     */
+    private final class BatchEntry
+        implements Runnable
+    {
+        /**
+         * Original artifact id, as given by the user
+         */
+        final String m_id;
+
+        /**
+         * Reason why this artifact should be skipped, null if there was no problem
+         */
+        String m_problem;
+
+        /**
+         * Wrapped group id
+         */
+        private String m_groupId;
+
+        /**
+         * Wrapped artifact id
+         */
+        private String m_artifactId;
+
+        /**
+         * Wrapped version, may need resolving
+         */
+        private String m_version;
+
+        /**
+         * Wrapped classifier, may be null
+         */
+        private String m_classifier;
+
+        /**
+         * @param id groupId:artifactId[:version[:classifier]], or just artifactId
+         */
+        BatchEntry( String id )
+        {
+            m_id = id;
+
+            String[] fields = id.split( ":" );
+            if( fields.length > 1 )
+            {
+                m_groupId = fields[0];
+                m_artifactId = fields[1];
+            }
+            else
+            {
+                // assume groupId same as artifactId
+                m_groupId = id;
+                m_artifactId = id;
+            }
+
+            if( fields.length > 2 )
+            {
+                m_version = fields[2];
+            }
+            if( fields.length > 3 )
+            {
+                m_classifier = fields[3];
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            try
+            {
+                if( PomUtils.needReleaseVersion( m_version ) )
+                {
+                    Artifact artifact = getFactory().createBuildArtifact( m_groupId, m_artifactId, "RELEASE", "jar" );
+                    m_version = PomUtils.getReleaseVersion( artifact, getSource(), getRemoteRepos(), getLocalRepo(),
+                        null );
+                }
+            }
+            catch( MojoExecutionException e )
+            {
+                m_problem = e.getMessage();
+                return;
+            }
+
+            Artifact pomArtifact = getFactory().createProjectArtifact( m_groupId, m_artifactId, m_version );
+            if( !DependencyCache.isCached( pomArtifact, getLocalRepo() ) )
+            {
+                try
+                {
+                    // fetch now so later dependency processing only hits the local repository
+                    getResolver().resolve( pomArtifact, getRemoteRepos(), getLocalRepo() );
+                }
+                catch( AbstractArtifactResolutionException e )
+                {
+                    getLog().debug( "Unable to download POM " + pomArtifact.getId() );
+                }
+            }
+        }
+
+        /**
+         * @return groupId:artifactId:version[:classifier]
+         */
+        String getResolvedId()
+        {
+            String id = m_groupId + ':' + m_artifactId + ':' + m_version;
+            if( PomUtils.isNotEmpty( m_classifier ) )
+            {
+                return id + ':' + m_classifier;
+            }
+            return id;
+        }
+    }
 }
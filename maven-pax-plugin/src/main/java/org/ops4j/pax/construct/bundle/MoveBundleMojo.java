@@ -18,13 +18,13 @@ package org.ops4j.pax.construct.bundle;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
 
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.util.FileUtils;
 import org.ops4j.pax.construct.util.DirUtils;
+import org.ops4j.pax.construct.util.PomCache;
 import org.ops4j.pax.construct.util.PomIterator;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
@@ -73,6 +73,13 @@ public class MoveBundleMojo extends AbstractMojo
      */
     private boolean repair;
 
+    /**
+     * Number of threads used to repair references, zero or less means use all available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
     /**
      * Locate the bundle project - try name first as a directory path, then an artifactId or symbolic-name
      * 
@@ -113,26 +120,35 @@ public class MoveBundleMojo extends AbstractMojo
     public void execute()
         throws MojoExecutionException
     {
-        Pom oldBundlePom = locateBundlePom( baseDirectory, bundleName );
+        PomCache.bind( this );
 
-        File oldBundleDir = oldBundlePom.getBasedir();
+        try
+        {
+            Pom oldBundlePom = locateBundlePom( baseDirectory, bundleName );
 
-        // the main work - move files and update modules
-        Pom newModulesPom = moveBundleFiles( oldBundlePom );
-        transferBundleOwnership( oldBundleDir, newModulesPom );
+            File oldBundleDir = oldBundlePom.getBasedir();
 
-        if( repair )
-        {
-            // construct a groupId from the new containing POM, eliminating duplicate segments where possible
-            String newGroupId = PomUtils.getCompoundId( newModulesPom.getGroupId(), newModulesPom.getArtifactId() );
+            // the main work - move files and update modules
+            Pom newModulesPom = moveBundleFiles( oldBundlePom );
+            transferBundleOwnership( oldBundleDir, newModulesPom );
 
-            // need to open the recently moved POM, can't use the old one!
-            Pom newBundlePom = newModulesPom.getModulePom( oldBundleDir.getName() );
-            if( null != newBundlePom )
+            if( repair )
             {
-                changeBundleGroup( newBundlePom, newGroupId );
+                // construct a groupId from the new containing POM, eliminating duplicate segments where possible
+                String newGroupId = PomUtils.getCompoundId( newModulesPom.getGroupId(), newModulesPom.getArtifactId() );
+
+                // need to open the recently moved POM, can't use the old one!
+                Pom newBundlePom = newModulesPom.getModulePom( oldBundleDir.getName() );
+                if( null != newBundlePom )
+                {
+                    changeBundleGroup( newBundlePom, newGroupId );
+                }
             }
         }
+        finally
+        {
+            PomCache.release( this );
+        }
     }
 
     /**
@@ -247,23 +263,26 @@ public class MoveBundleMojo extends AbstractMojo
      * @param bundlePom bundle POM from the new directory
      * @param newGroupId groupId based on the new location
      */
-    private void changeBundleGroup( Pom bundlePom, String newGroupId )
+    private void changeBundleGroup( final Pom bundlePom, String newGroupId )
     {
         try
         {
             // update bundle first, in case of failure
-            String oldGroupId = bundlePom.getGroupId();
+            final String oldGroupId = bundlePom.getGroupId();
             bundlePom.setGroupId( newGroupId );
             bundlePom.write();
 
-            for( Iterator i = new PomIterator( bundlePom.getBasedir() ); i.hasNext(); )
+            // each POM is updated independently, so we can visit them in parallel
+            PomIterator.visitAll( bundlePom.getBasedir(), false, new PomIterator.Visitor()
             {
-                Pom pom = (Pom) i.next();
-                if( !pom.equals( bundlePom ) )
+                public void visit( Pom pom )
                 {
-                    updateBundleReferences( pom, oldGroupId, bundlePom.getGroupId(), bundlePom.getArtifactId() );
+                    if( !pom.equals( bundlePom ) )
+                    {
+                        updateBundleReferences( pom, oldGroupId, bundlePom.getGroupId(), bundlePom.getArtifactId() );
+                    }
                 }
-            }
+            }, threads );
         }
         catch( IOException e )
         {
@@ -18,12 +18,12 @@ package org.ops4j.pax.construct.bundle;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
 
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.util.FileUtils;
+import org.ops4j.pax.construct.util.PomCache;
 import org.ops4j.pax.construct.util.PomIterator;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
 
@@ -63,35 +63,60 @@ public class RemoveBundleMojo extends AbstractMojo
      */
     private boolean repair;
 
+    /**
+     * Number of threads used to repair references, zero or less means use all available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
     /**
      * {@inheritDoc}
      */
     public void execute()
         throws MojoExecutionException
     {
-        Pom bundlePom = MoveBundleMojo.locateBundlePom( baseDirectory, bundleName );
+        PomCache.bind( this );
 
-        // protect against removing the wrong directory
-        if( "pom".equals( bundlePom.getPackaging() ) )
+        try
         {
-            throw new MojoExecutionException( "Ignoring multi-module project " + bundleName );
-        }
+            final Pom bundlePom = MoveBundleMojo.locateBundlePom( baseDirectory, bundleName );
 
-        if( repair )
-        {
-            for( Iterator i = new PomIterator( baseDirectory ); i.hasNext(); )
+            // protect against removing the wrong directory
+            if( "pom".equals( bundlePom.getPackaging() ) )
+            {
+                throw new MojoExecutionException( "Ignoring multi-module project " + bundleName );
+            }
+
+            if( repair )
             {
-                Pom pom = (Pom) i.next();
-                if( !pom.equals( bundlePom ) )
+                // read the bundle details up front, so the parallel visitors don't share the bundle POM
+                final String bundleId = bundlePom.getId();
+                final Dependency dependency = new Dependency();
+                dependency.setGroupId( bundlePom.getGroupId() );
+                dependency.setArtifactId( bundlePom.getArtifactId() );
+
+                // each POM is repaired independently, so we can visit them in parallel
+                PomIterator.visitAll( baseDirectory, false, new PomIterator.Visitor()
                 {
-                    removeBundleReferences( pom, bundlePom );
-                }
+                    public void visit( Pom pom )
+                    {
+                        if( !bundleId.equals( pom.getId() ) )
+                        {
+                            removeBundleReferences( pom, dependency, bundleId );
+                        }
+                    }
+                }, threads );
             }
-        }
 
-        // now do the actual removal work
-        dropBundleOwnership( bundlePom );
-        removeBundleFiles( bundlePom );
+            // now do the actual removal work
+            dropBundleOwnership( bundlePom );
+            removeBundleFiles( bundlePom );
+        }
+        finally
+        {
+            PomCache.release( this );
+        }
     }
 
     /**
@@ -142,17 +167,14 @@ public class RemoveBundleMojo extends AbstractMojo
      * Remove any references (ie. dependencies, dependencyManagement) to the bundle artifact
      * 
      * @param pom a Maven POM in the project tree
-     * @param bundlePom the Maven POM for the bundle
+     * @param dependency the bundle artifact, as a dependency
+     * @param bundleId the bundle project id
      */
-    private void removeBundleReferences( Pom pom, Pom bundlePom )
+    private void removeBundleReferences( Pom pom, Dependency dependency, String bundleId )
     {
-        Dependency dependency = new Dependency();
-        dependency.setGroupId( bundlePom.getGroupId() );
-        dependency.setArtifactId( bundlePom.getArtifactId() );
-
         if( pom.removeDependency( dependency ) )
         {
-            getLog().info( "Removing " + bundlePom + " from " + pom );
+            getLog().info( "Removing " + bundleId + " from " + pom );
 
             try
             {
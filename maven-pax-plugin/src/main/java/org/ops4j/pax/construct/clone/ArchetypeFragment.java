@@ -16,21 +16,34 @@ package org.ops4j.pax.construct.clone;
  * limitations under the License.
  */
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.util.DirectoryScanner;
-import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.StringUtils;
 import org.ops4j.pax.construct.util.DirUtils;
@@ -46,9 +59,19 @@ public class ArchetypeFragment
     private static final int TEXT_FILE = 1;
 
     /**
-     * Simple counter to keep fragments unique
+     * Number of leading bytes examined when deciding if a file is text or binary
      */
-    private static int m_fragmentCount;
+    private static final int SNIFF_SIZE = 8192;
+
+    /**
+     * Platform encoding, used to read and write text files
+     */
+    private static final String PLATFORM_ENCODING = new OutputStreamWriter( System.out ).getEncoding();
+
+    /**
+     * Location of archetype resources inside the fragment
+     */
+    private static final String RESOURCES_PATH = "archetype-resources/";
 
     /**
      * Current archetype model
@@ -61,9 +84,19 @@ public class ArchetypeFragment
     private String m_namespace;
 
     /**
-     * Temporary directory for this fragment
+     * Directory where the fragment archive will be saved
+     */
+    private File m_fragmentDir;
+
+    /**
+     * Shared store of fragment file content
+     */
+    private FragmentStore m_store;
+
+    /**
+     * Maps archive paths to stored content, in the order they were added
      */
-    private File m_tempDir;
+    private Map m_entries;
 
     /**
      * Sequence of included filenames
@@ -75,14 +108,25 @@ public class ArchetypeFragment
      */
     private boolean m_unify;
 
+    /**
+     * Translates text content for this fragment
+     */
+    private TextTranslator m_translator;
+
+    /**
+     * Translates text content of contained Maven POMs when unifying projects
+     */
+    private TextTranslator m_pomTranslator;
+
     /**
      * Create a new archetype fragment
      * 
-     * @param tempDir some temporary directory
+     * @param fragmentDir where the fragment archive will be saved
+     * @param store shared store of fragment file content
      * @param namespace primary namespace, may be null
      * @param unify set true when unifying Maven projects
      */
-    public ArchetypeFragment( File tempDir, String namespace, boolean unify )
+    public ArchetypeFragment( File fragmentDir, FragmentStore store, String namespace, boolean unify )
     {
         // always allow partial use
         m_model = new ArchetypeModel();
@@ -91,8 +135,11 @@ public class ArchetypeFragment
         // primary Java package
         m_namespace = namespace;
 
-        // unique scratch directory for the fragment assembly
-        m_tempDir = new File( tempDir, "fragment" + ( m_fragmentCount++ ) );
+        // content is assembled in the shared store
+        m_fragmentDir = fragmentDir;
+        m_store = store;
+        m_entries = new LinkedHashMap();
+
         m_includedFiles = new ArrayList();
 
         m_unify = unify;
@@ -106,8 +153,6 @@ public class ArchetypeFragment
      */
     public void addPom( File projectDir, Pom pom )
     {
-        File toDir = new File( m_tempDir, "archetype-resources" );
-
         File pomFile;
         if( null == pom )
         {
@@ -119,7 +164,7 @@ public class ArchetypeFragment
         }
 
         // relocate to 'classic' archetype location
-        translateFile( pomFile.getParentFile(), pomFile.getName(), toDir, "pom.xml" );
+        translateFile( pomFile.getParentFile(), pomFile.getName(), "pom.xml" );
     }
 
     /**
@@ -143,7 +188,6 @@ public class ArchetypeFragment
         // primary source location
         String packagePath = sourcePath + m_namespace.replace( '.', '/' ) + '/';
 
-        File to = new File( m_tempDir, "archetype-resources" );
         for( Iterator i = getFilenames( projectDir, sourcePath, null, null ).iterator(); i.hasNext(); )
         {
             String filename = (String) i.next();
@@ -151,7 +195,7 @@ public class ArchetypeFragment
 
             // relocate to 'classic' archetype location (primary package gets trimmed)
             String target = StringUtils.replace( filename, packagePath, sourcePath );
-            int status = translateFile( projectDir, filename, to, target );
+            int status = translateFile( projectDir, filename, target );
             if( NO_SUCH_FILE == status )
             {
                 continue;
@@ -200,7 +244,6 @@ public class ArchetypeFragment
         // use relative path in search
         String resourcePath = pivot[2];
 
-        File to = new File( m_tempDir, "archetype-resources" );
         for( Iterator i = getFilenames( projectDir, resourcePath, includes, excludes ).iterator(); i.hasNext(); )
         {
             String filename = (String) i.next();
@@ -214,7 +257,7 @@ public class ArchetypeFragment
             }
 
             // relocate to 'classic' archetype location
-            int status = translateFile( projectDir, filename, to, target );
+            int status = translateFile( projectDir, filename, target );
             if( NO_SUCH_FILE != status )
             {
                 addResourceEntry( target, isTest, TEXT_FILE == status );
@@ -332,10 +375,12 @@ public class ArchetypeFragment
     public void createArchive( String fragmentId, Archiver archiver )
         throws MojoExecutionException
     {
-        File modelFile = new File( m_tempDir, "META-INF/archetype.xml" );
+        File modelFile;
 
         try
         {
+            modelFile = m_store.createTempFile();
+
             m_model.setId( fragmentId );
             m_model.write( modelFile );
         }
@@ -344,14 +389,19 @@ public class ArchetypeFragment
             throw new MojoExecutionException( "I/O error saving archetype model", e );
         }
 
-        File jarFile = new File( m_tempDir.getParentFile(), fragmentId + ".jar" );
+        File jarFile = new File( m_fragmentDir, fragmentId + ".jar" );
 
         try
         {
-            // archive fragment files
+            // archive fragment files straight from the store
             archiver.setDestFile( jarFile );
             archiver.setIncludeEmptyDirs( false );
-            archiver.addDirectory( m_tempDir );
+            archiver.addFile( modelFile, "META-INF/archetype.xml" );
+            for( Iterator i = m_entries.entrySet().iterator(); i.hasNext(); )
+            {
+                Map.Entry entry = (Map.Entry) i.next();
+                archiver.addFile( (File) entry.getValue(), (String) entry.getKey() );
+            }
             archiver.createArchive();
         }
         catch( ArchiverException e )
@@ -362,52 +412,57 @@ public class ArchetypeFragment
         {
             throw new MojoExecutionException( "I/O error archiving archetype directory", e );
         }
+        finally
+        {
+            modelFile.delete();
+        }
+    }
 
-        try
+    /**
+     * @param path mapped file path
+     * @return translator that converts file content to work with Pax-Construct v2 archetype processing
+     */
+    private TextTranslator getTranslator( String path )
+    {
+        if( null == m_translator )
         {
-            // clean-up after ourselves...
-            FileUtils.deleteDirectory( m_tempDir );
+            m_translator = new TextTranslator();
+            addStandardReplacements( m_translator );
         }
-        catch( IOException e )
+
+        if( m_unify && path.endsWith( "/pom.xml" ) )
         {
-            throw new MojoExecutionException( "Unable to remove archetype files", e );
+            if( null == m_pomTranslator )
+            {
+                m_pomTranslator = new TextTranslator();
+                addStandardReplacements( m_pomTranslator );
+
+                // when unifying projects we need to comment out the 'poms' modules from contained projects
+                m_pomTranslator.addReplacement( "module>poms</module", "!-- module>poms</module --" );
+            }
+            return m_pomTranslator;
         }
+
+        return m_translator;
     }
 
     /**
-     * Translate file content to work with Pax-Construct v2 archetype processing
-     * 
-     * @param text original text
-     * @param path mapped file path
-     * @return translated text
+     * @param translator text translator
      */
-    private String translateTextFile( String text, String path )
+    private void addStandardReplacements( TextTranslator translator )
     {
-        String content = text;
-
         // protect special content from accidental replacement
-        content = StringUtils.replace( content, "$", "${dollar}" );
-        content = StringUtils.replace( content, "#", "${hash}" );
-
-        content = "#set( $dollar = '$' )" + System.getProperty( "line.separator" ) + content;
-        content = "#set( $hash = '#' )" + System.getProperty( "line.separator" ) + content;
+        translator.addReplacement( "$", "${dollar}" );
+        translator.addReplacement( "#", "${hash}" );
 
         // standard archetype translation
-        content = StringUtils.replace( content, m_namespace, "${package}" );
+        translator.addReplacement( m_namespace, "${package}" );
 
         // Pax-Construct v1 => v2 translation
-        content = StringUtils.replace( content, "bundle.package", "bundle.namespace" );
-        content = StringUtils.replace( content, "jar.groupId", "wrapped.groupId" );
-        content = StringUtils.replace( content, "jar.artifactId", "wrapped.artifactId" );
-        content = StringUtils.replace( content, "jar.version", "wrapped.version" );
-
-        if( m_unify && path.endsWith( "/pom.xml" ) )
-        {
-            // when unifying projects we need to comment out the 'poms' modules from contained projects
-            content = StringUtils.replace( content, "module>poms</module", "!-- module>poms</module --" );
-        }
-
-        return content;
+        translator.addReplacement( "bundle.package", "bundle.namespace" );
+        translator.addReplacement( "jar.groupId", "wrapped.groupId" );
+        translator.addReplacement( "jar.artifactId", "wrapped.artifactId" );
+        translator.addReplacement( "jar.version", "wrapped.version" );
     }
 
     /**
@@ -415,63 +470,138 @@ public class ArchetypeFragment
      * 
      * @param fromDir original base directory
      * @param originalPath original path
-     * @param toDir target base directory
      * @param mappedPath mapped path
      * @return NO_SUCH_FILE, BINARY_FILE or TEXT_FILE
      */
-    private int translateFile( File fromDir, String originalPath, File toDir, String mappedPath )
+    private int translateFile( File fromDir, String originalPath, String mappedPath )
     {
         File from = new File( fromDir, originalPath );
-        FileOutputStream out = null;
+        File tempFile = null;
+        InputStream in = null;
+        OutputStream out = null;
 
         try
         {
-            FileInputStream in = new FileInputStream( from );
-            byte[] raw = IOUtil.toByteArray( in );
-            IOUtil.close( in );
+            in = new BufferedInputStream( new FileInputStream( from ), SNIFF_SIZE );
 
-            String text;
-            try
-            {
-                text = IOUtil.toString( raw );
-            }
-            catch( IOException e )
-            {
-                text = "";
-            }
+            tempFile = m_store.createTempFile();
+            out = new FileOutputStream( tempFile );
 
-            if( Arrays.equals( text.getBytes(), raw ) )
+            if( isText( in ) )
             {
-                // text files can be mapped to new paths
-                File file = new File( toDir, mappedPath );
-                file.getParentFile().mkdirs();
-
-                out = new FileOutputStream( file );
-                IOUtil.copy( translateTextFile( text, mappedPath ), out );
-
-                return TEXT_FILE;
+                try
+                {
+                    // text files can be mapped to new paths
+                    Writer writer = new OutputStreamWriter( out );
+
+                    String newline = System.getProperty( "line.separator" );
+                    writer.write( "#set( $hash = '#' )" + newline );
+                    writer.write( "#set( $dollar = '$' )" + newline );
+
+                    Reader reader = new InputStreamReader( in, newPlatformDecoder() );
+                    getTranslator( mappedPath ).translate( reader, writer );
+                    addEntry( mappedPath, out, tempFile );
+
+                    return TEXT_FILE;
+                }
+                catch( CharacterCodingException e )
+                {
+                    // not text after all, so start again and copy it unchanged
+                    IOUtil.close( in );
+                    IOUtil.close( out );
+                    tempFile.delete();
+
+                    in = new FileInputStream( from );
+                    tempFile = m_store.createTempFile();
+                    out = new FileOutputStream( tempFile );
+                }
             }
 
             // binary files cannot be mapped to new paths
-            File file = new File( toDir, originalPath );
-            file.getParentFile().mkdirs();
-
-            out = new FileOutputStream( file );
-            IOUtil.copy( raw, out );
+            IOUtil.copy( in, out );
+            addEntry( originalPath, out, tempFile );
 
             return BINARY_FILE;
         }
         catch( IOException e )
         {
             System.err.println( "WARNING: unable to clone " + from );
+            if( null != tempFile )
+            {
+                IOUtil.close( out );
+                tempFile.delete();
+            }
             return NO_SUCH_FILE;
         }
         finally
         {
+            IOUtil.close( in );
             IOUtil.close( out );
         }
     }
 
+    /**
+     * Move completed content into the store and record where it belongs in the fragment
+     * 
+     * @param path resource path
+     * @param out stream used to write the content
+     * @param tempFile scratch file holding the content
+     * @throws IOException
+     */
+    private void addEntry( String path, OutputStream out, File tempFile )
+        throws IOException
+    {
+        out.close();
+        m_entries.put( RESOURCES_PATH + path, m_store.add( tempFile ) );
+    }
+
+    /**
+     * Sniff the start of the stream to see if it holds text in the platform encoding, the stream is reset afterwards.
+     * This is only a first check, the rest of the content is checked as it is translated.
+     * 
+     * @param in buffered input stream
+     * @return true if the content looks like text, otherwise false
+     * @throws IOException
+     */
+    private static boolean isText( InputStream in )
+        throws IOException
+    {
+        byte[] prefix = new byte[SNIFF_SIZE];
+
+        in.mark( SNIFF_SIZE );
+        int length = 0;
+        int n;
+        while( length < SNIFF_SIZE && ( n = in.read( prefix, length, SNIFF_SIZE - length ) ) > 0 )
+        {
+            length += n;
+        }
+        in.reset();
+
+        for( int i = 0; i < length; i++ )
+        {
+            if( 0 == prefix[i] )
+            {
+                return false;
+            }
+        }
+
+        // a multi-byte character cut short at the end of the prefix is not an error
+        boolean eof = length < SNIFF_SIZE;
+        CharBuffer chars = CharBuffer.allocate( length );
+        return !newPlatformDecoder().decode( ByteBuffer.wrap( prefix, 0, length ), chars, eof ).isError();
+    }
+
+    /**
+     * @return decoder for the platform encoding that reports bad input instead of replacing it
+     */
+    private static CharsetDecoder newPlatformDecoder()
+    {
+        CharsetDecoder decoder = Charset.forName( PLATFORM_ENCODING ).newDecoder();
+        decoder.onMalformedInput( CodingErrorAction.REPORT );
+        decoder.onUnmappableCharacter( CodingErrorAction.REPORT );
+        return decoder;
+    }
+
     /**
      * @return list of filenames included in this fragment
      */
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -39,6 +40,7 @@ import org.codehaus.plexus.util.StringUtils;
 import org.ops4j.pax.construct.util.DirUtils;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
+import org.ops4j.pax.construct.util.WorkerPool;
 
 /**
  * Clones an existing project and produces a script (plus archetypes) to mimic its structure using Pax-Construct
@@ -119,6 +121,13 @@ public class CloneMojo extends AbstractMojo
      */
     private boolean unify;
 
+    /**
+     * Number of threads used to build archetype fragments, zero or less means use all available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
     /**
      * List of directories that have already been processed
      */
@@ -139,6 +148,21 @@ public class CloneMojo extends AbstractMojo
      */
     private List m_installCommands;
 
+    /**
+     * Sequence of archetype fragments being built in the background
+     */
+    private List m_fragmentTasks;
+
+    /**
+     * Builds archetype fragments in the background while the script is assembled
+     */
+    private WorkerPool m_fragmentPool;
+
+    /**
+     * Shared store of archetype fragment content
+     */
+    private FragmentStore m_fragmentStore;
+
     /**
      * {@inheritDoc}
      */
@@ -149,13 +173,48 @@ public class CloneMojo extends AbstractMojo
         PaxScript buildScript = new PaxScriptImpl();
 
         m_bundleNameMap = new HashMap();
-        m_majorProjectMap = new HashMap();
+        m_majorProjectMap = new LinkedHashMap();
         m_handledDirs = new ArrayList();
 
         m_installCommands = new ArrayList();
+        m_fragmentTasks = new ArrayList();
 
         getFragmentDir().mkdirs();
 
+        m_fragmentPool = new WorkerPool( "pax-clone", WorkerPool.getWorkerCount( threads ) );
+        m_fragmentStore = new FragmentStore( new File( m_tempdir, "store" ) );
+
+        try
+        {
+            cloneReactorProjects( buildScript );
+
+            // grab everything else
+            archiveMajorProjects();
+
+            waitForFragments();
+        }
+        finally
+        {
+            // queued fragments must finish before we release the workers, even when cloning failed
+            if( stopFragmentPool() )
+            {
+                // only safe to remove the shared store once no worker can still be writing to it
+                removeFragmentStore();
+            }
+        }
+
+        writePlatformScripts( buildScript );
+    }
+
+    /**
+     * Assemble the build script from the reactor projects, queuing archetype fragments as we go
+     * 
+     * @param buildScript build script
+     * @throws MojoExecutionException
+     */
+    private void cloneReactorProjects( PaxScript buildScript )
+        throws MojoExecutionException
+    {
         for( Iterator i = m_reactorProjects.iterator(); i.hasNext(); )
         {
             // potential project to be converted / captured
@@ -192,11 +251,70 @@ public class CloneMojo extends AbstractMojo
             }
             // else handled by the major project(s)
         }
+    }
+
+    /**
+     * Remove the fragment store once all the archives have been created, so it doesn't end up in the clone directory
+     */
+    private void removeFragmentStore()
+    {
+        int sharedCount = m_fragmentStore.getSharedCount();
+        if( sharedCount > 0 )
+        {
+            getLog().info( "Shared " + sharedCount + " of " + m_fragmentStore.getAddedCount() + " fragment files" );
+        }
 
-        // grab everything else
-        archiveMajorProjects();
+        try
+        {
+            m_fragmentStore.delete();
+        }
+        catch( IOException e )
+        {
+            getLog().warn( "Unable to remove fragment store" );
+        }
+    }
 
-        writePlatformScripts( buildScript );
+    /**
+     * Wait for queued archetype fragments to finish, then release the worker threads
+     * 
+     * @return true if all the fragments finished, false if we were interrupted while waiting
+     */
+    private boolean stopFragmentPool()
+    {
+        try
+        {
+            m_fragmentPool.join();
+            return true;
+        }
+        catch( RuntimeException e )
+        {
+            getLog().warn( "Interrupted while waiting for archetype fragments, leaving fragment store in place" );
+            return false;
+        }
+        finally
+        {
+            m_fragmentPool.shutdown();
+        }
+    }
+
+    /**
+     * Wait for all queued archetype fragments, reporting the first problem in reactor order
+     * 
+     * @throws MojoExecutionException
+     */
+    private void waitForFragments()
+        throws MojoExecutionException
+    {
+        m_fragmentPool.join();
+
+        for( Iterator i = m_fragmentTasks.iterator(); i.hasNext(); )
+        {
+            FragmentTask task = (FragmentTask) i.next();
+            if( null != task.m_problem )
+            {
+                throw task.m_problem;
+            }
+        }
     }
 
     /**
@@ -626,13 +744,44 @@ public class CloneMojo extends AbstractMojo
      * @return clause identifying the archetype fragment
      * @throws MojoExecutionException
      */
-    private String createBundleArchetype( MavenProject project, String namespace, Pom customizedPom )
+    private String createBundleArchetype( final MavenProject project, final String namespace,
+        final Pom customizedPom )
         throws MojoExecutionException
+    {
+        getLog().info( "Cloning bundle project " + project.getArtifactId() );
+
+        // archetype must use different id
+        String groupId = project.getGroupId();
+        String artifactId = project.getArtifactId() + "-archetype";
+        String version = project.getVersion();
+
+        // archive customized bundle sources, POM and Bnd instructions
+        String fragmentId = groupId + ':' + artifactId + ':' + version;
+        ArchetypeFragment archetype = new ArchetypeFragment( getFragmentDir(), m_fragmentStore, namespace, false );
+        queueFragment( new FragmentTask( archetype, fragmentId )
+        {
+            void addContent( ArchetypeFragment fragment )
+            {
+                addBundleContent( fragment, project, namespace, customizedPom );
+            }
+        } );
+
+        return fragmentId;
+    }
+
+    /**
+     * Add bundle sources, resources and POM to the given archetype fragment
+     * 
+     * @param fragment archetype fragment
+     * @param project Maven project
+     * @param namespace Java namespace, may be null
+     * @param customizedPom customized Maven project model, may be null
+     */
+    private static void addBundleContent( ArchetypeFragment fragment, MavenProject project, String namespace,
+        Pom customizedPom )
     {
         File baseDir = project.getBasedir();
 
-        getLog().info( "Cloning bundle project " + project.getArtifactId() );
-        ArchetypeFragment fragment = new ArchetypeFragment( getFragmentDir(), namespace, false );
         fragment.addPom( baseDir, customizedPom );
 
         if( null != namespace )
@@ -655,17 +804,6 @@ public class CloneMojo extends AbstractMojo
 
         // consider everything else in the bundle directory to be a resource
         fragment.addResources( baseDir, baseDir.getPath(), null, excludes, false );
-
-        // archetype must use different id
-        String groupId = project.getGroupId();
-        String artifactId = project.getArtifactId() + "-archetype";
-        String version = project.getVersion();
-
-        // archive customized bundle sources, POM and Bnd instructions
-        String fragmentId = groupId + ':' + artifactId + ':' + version;
-        fragment.createArchive( fragmentId.replace( ':', '_' ), newJarArchiver() );
-
-        return fragmentId;
     }
 
     /**
@@ -759,21 +897,16 @@ public class CloneMojo extends AbstractMojo
     private String createProjectArchetype( MavenProject project )
         throws MojoExecutionException
     {
-        File baseDir = project.getBasedir();
+        final File baseDir = project.getBasedir();
 
         getLog().info( "Cloning primary project " + project.getArtifactId() );
-        ArchetypeFragment fragment = new ArchetypeFragment( getFragmentDir(), null, unify );
-        fragment.addPom( baseDir, null );
 
-        List excludes = new ArrayList();
+        final List excludes = new ArrayList();
         excludes.addAll( getExcludedPaths( project ) );
         excludes.add( "**/target/" );
         excludes.add( "runner/" );
         excludes.add( "pom.xml" );
 
-        // consider everything else that's not been handled to be a resource
-        fragment.addResources( baseDir, baseDir.getPath(), null, excludes, false );
-
         // archetype must use different id
         String groupId = project.getGroupId();
         String artifactId = project.getArtifactId() + "-archetype";
@@ -781,11 +914,32 @@ public class CloneMojo extends AbstractMojo
 
         // archive all the customized non-bundle POMs and projects
         String fragmentId = groupId + ':' + artifactId + ':' + version;
-        fragment.createArchive( fragmentId.replace( ':', '_' ), newJarArchiver() );
+        ArchetypeFragment archetype = new ArchetypeFragment( getFragmentDir(), m_fragmentStore, null, unify );
+        queueFragment( new FragmentTask( archetype, fragmentId )
+        {
+            void addContent( ArchetypeFragment fragment )
+            {
+                fragment.addPom( baseDir, null );
+
+                // consider everything else that's not been handled to be a resource
+                fragment.addResources( baseDir, baseDir.getPath(), null, excludes, false );
+            }
+        } );
 
         return fragmentId;
     }
 
+    /**
+     * Queue the given archetype fragment to be built in the background
+     * 
+     * @param task archetype fragment task
+     */
+    private void queueFragment( FragmentTask task )
+    {
+        m_fragmentTasks.add( task );
+        m_fragmentPool.execute( task );
+    }
+
     /**
      * Find which paths in this Maven project have already been collected, and should therefore be excluded
      * 
@@ -881,4 +1035,74 @@ public class CloneMojo extends AbstractMojo
 
         m_installCommands.add( buffer );
     }
+
+    /**
+     * Builds an archetype fragment, each fragment gets its own scratch directory and archiver so they can be built
+     * independently of each other
+     */
+    private abstract class FragmentTask
+        implements Runnable
+    {
+        /**
+         * Archetype fragment being built
+         */
+        private final ArchetypeFragment m_fragment;
+
+        /**
+         * Archetype fragment id
+         */
+        private final String m_fragmentId;
+
+        /**
+         * Jar archiver for this fragment
+         */
+        private final Archiver m_archiver;
+
+        /**
+         * Problem building the fragment, null if there was no problem
+         */
+        MojoExecutionException m_problem;
+
+        /**
+         * @param fragment archetype fragment
+         * @param fragmentId archetype fragment id
+         * @throws MojoExecutionException
+         */
+        FragmentTask( ArchetypeFragment fragment, String fragmentId )
+            throws MojoExecutionException
+        {
+            m_fragment = fragment;
+            m_fragmentId = fragmentId;
+
+            // lookup archiver on the main thread
+            m_archiver = newJarArchiver();
+        }
+
+        /**
+         * Add content to the archetype fragment
+         * 
+         * @param fragment archetype fragment
+         */
+        abstract void addContent( ArchetypeFragment fragment );
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            try
+            {
+                addContent( m_fragment );
+                m_fragment.createArchive( m_fragmentId.replace( ':', '_' ), m_archiver );
+            }
+            catch( MojoExecutionException e )
+            {
+                m_problem = e;
+            }
+            catch( RuntimeException e )
+            {
+                m_problem = new MojoExecutionException( "Problem creating archetype fragment " + m_fragmentId, e );
+            }
+        }
+    }
 }
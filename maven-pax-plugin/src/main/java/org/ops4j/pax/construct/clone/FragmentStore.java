@@ -0,0 +1,121 @@
+package org.ops4j.pax.construct.clone;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.ops4j.pax.construct.util.DirUtils;
+
+/**
+ * Content-addressed store of translated fragment files, shared between archetype fragments so identical content is
+ * only kept once no matter how many fragments refer to it
+ */
+public final class FragmentStore
+{
+    /**
+     * Directory holding the stored content, named by checksum
+     */
+    private final File m_storeDir;
+
+    /**
+     * Number of files added to the store
+     */
+    private int m_addedCount;
+
+    /**
+     * Number of files already found in the store
+     */
+    private int m_sharedCount;
+
+    /**
+     * @param storeDir directory holding the stored content
+     */
+    public FragmentStore( File storeDir )
+    {
+        m_storeDir = storeDir;
+    }
+
+    /**
+     * @return new scratch file inside the store, which can be written and then passed to {@link #add(File)}
+     * @throws IOException
+     */
+    public File createTempFile()
+        throws IOException
+    {
+        m_storeDir.mkdirs();
+        return File.createTempFile( "entry", ".tmp", m_storeDir );
+    }
+
+    /**
+     * Move a scratch file into the store, discarding it if the store already holds the same content
+     *
+     * @param tempFile scratch file created by {@link #createTempFile()}
+     * @return stored file
+     * @throws IOException
+     */
+    public File add( File tempFile )
+        throws IOException
+    {
+        File storedFile = new File( m_storeDir, DirUtils.calculateChecksum( tempFile ) );
+
+        synchronized( this )
+        {
+            m_addedCount++;
+
+            if( storedFile.exists() )
+            {
+                m_sharedCount++;
+                tempFile.delete();
+            }
+            else if( !tempFile.renameTo( storedFile ) )
+            {
+                FileUtils.rename( tempFile, storedFile );
+            }
+        }
+
+        return storedFile;
+    }
+
+    /**
+     * @return number of files added to the store
+     */
+    public synchronized int getAddedCount()
+    {
+        return m_addedCount;
+    }
+
+    /**
+     * @return number of added files that were already in the store
+     */
+    public synchronized int getSharedCount()
+    {
+        return m_sharedCount;
+    }
+
+    /**
+     * Remove the store and everything in it
+     *
+     * @throws IOException
+     */
+    public void delete()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( m_storeDir );
+    }
+}
@@ -0,0 +1,211 @@
+package org.ops4j.pax.construct.clone;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Applies a set of literal text replacements in a single streaming pass. Patterns are held in a character trie and
+ * matched leftmost-longest, replaced text is never re-scanned.
+ */
+final class TextTranslator
+{
+    /**
+     * Number of characters read from the underlying stream at a time
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Root of the pattern trie
+     */
+    private final Node m_root = new Node();
+
+    /**
+     * Length of the longest pattern
+     */
+    private int m_maxLength;
+
+    /**
+     * Add a literal replacement, null or empty patterns are ignored
+     *
+     * @param pattern literal text to replace
+     * @param replacement replacement text
+     */
+    public void addReplacement( String pattern, String replacement )
+    {
+        if( null == pattern || pattern.length() == 0 )
+        {
+            return;
+        }
+
+        Node node = m_root;
+        for( int i = 0; i < pattern.length(); i++ )
+        {
+            node = node.addChild( pattern.charAt( i ) );
+        }
+
+        // first replacement wins, same as applying them in order
+        if( null == node.m_replacement )
+        {
+            node.m_replacement = replacement;
+        }
+
+        m_maxLength = Math.max( m_maxLength, pattern.length() );
+    }
+
+    /**
+     * Copy text from the reader to the writer, applying the replacements along the way
+     *
+     * @param in source text
+     * @param out translated text
+     * @throws IOException
+     */
+    public void translate( Reader in, Writer out )
+        throws IOException
+    {
+        char[] buf = new char[BUFFER_SIZE + m_maxLength];
+        int start = 0;
+        int end = 0;
+
+        boolean eof = false;
+        while( true )
+        {
+            if( !eof && end - start < m_maxLength + 1 )
+            {
+                // keep enough lookahead to match the longest pattern
+                System.arraycopy( buf, start, buf, 0, end - start );
+                end -= start;
+                start = 0;
+
+                while( !eof && end < buf.length )
+                {
+                    int n = in.read( buf, end, buf.length - end );
+                    if( n < 0 )
+                    {
+                        eof = true;
+                    }
+                    else
+                    {
+                        end += n;
+                    }
+                }
+            }
+
+            if( start >= end )
+            {
+                break;
+            }
+
+            // find the longest pattern starting at this position
+            String replacement = null;
+            int matchLength = 0;
+
+            Node node = m_root;
+            for( int i = start; i < end && null != ( node = node.getChild( buf[i] ) ); i++ )
+            {
+                if( null != node.m_replacement )
+                {
+                    replacement = node.m_replacement;
+                    matchLength = i + 1 - start;
+                }
+            }
+
+            if( null != replacement )
+            {
+                out.write( replacement );
+                start += matchLength;
+            }
+            else
+            {
+                // copy run of characters that can't start a pattern
+                int mark = start++;
+                while( start < end && null == m_root.getChild( buf[start] ) )
+                {
+                    start++;
+                }
+                out.write( buf, mark, start - mark );
+            }
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Node in the pattern trie
+     */
+    private static final class Node
+    {
+        /**
+         * Characters leading to child nodes
+         */
+        private char[] m_keys = new char[0];
+
+        /**
+         * Child nodes, same order as the keys
+         */
+        private Node[] m_children = new Node[0];
+
+        /**
+         * Replacement text when a pattern ends at this node, otherwise null
+         */
+        String m_replacement;
+
+        /**
+         * @param c next character
+         * @return child node for the character, null if no pattern continues with it
+         */
+        Node getChild( char c )
+        {
+            for( int i = 0; i < m_keys.length; i++ )
+            {
+                if( m_keys[i] == c )
+                {
+                    return m_children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param c next character
+         * @return existing or new child node for the character
+         */
+        Node addChild( char c )
+        {
+            Node child = getChild( c );
+            if( null == child )
+            {
+                char[] keys = new char[m_keys.length + 1];
+                Node[] children = new Node[m_children.length + 1];
+
+                System.arraycopy( m_keys, 0, keys, 0, m_keys.length );
+                System.arraycopy( m_children, 0, children, 0, m_children.length );
+
+                child = new Node();
+
+                keys[m_keys.length] = c;
+                children[m_children.length] = child;
+
+                m_keys = keys;
+                m_children = children;
+            }
+            return child;
+        }
+    }
+}
@@ -27,7 +27,10 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.ops4j.pax.construct.util.DirUtils;
+import org.ops4j.pax.construct.util.ManifestCache;
+import org.ops4j.pax.construct.util.PomCache;
 import org.ops4j.pax.construct.util.ReflectMojo;
+import org.ops4j.pax.construct.util.UnpackCache;
 
 /**
  * Extends <a href="http://maven.apache.org/plugins/maven-compiler-plugin/compile-mojo.html">CompilerMojo</a> to
@@ -48,6 +51,14 @@ public class BundleCompilerMojo extends CompilerMojo
      */
     private MavenProject m_project;
 
+    /**
+     * Directory used to cache unpacked Bundle-ClassPath entries, can be shared between projects and builds.
+     * Defaults to target/pax-compiler when not set.
+     * 
+     * @parameter expression="${unpackCache}"
+     */
+    private File unpackCache;
+
     /**
      * {@inheritDoc}
      */
@@ -55,7 +66,14 @@ public class BundleCompilerMojo extends CompilerMojo
     {
         File outputDir = getOutputDirectory();
         List classpath = super.getClasspathElements();
-        File tempDir = new File( outputDir.getParent(), "pax-compiler" );
+        File tempDir = unpackCache;
+        if( null == tempDir )
+        {
+            tempDir = new File( outputDir.getParent(), "pax-compiler" );
+        }
+
+        // remove copies of bundles that are no longer used by any build sharing this cache
+        UnpackCache.prune( tempDir, UnpackCache.MAX_UNUSED_AGE );
 
         return DirUtils.expandOSGiClassPath( outputDir, classpath, tempDir );
     }
@@ -69,6 +87,9 @@ public class BundleCompilerMojo extends CompilerMojo
     {
         BundleCompilerMojo.mergeCompilerConfiguration( this, m_project );
 
+        // classpath expansion reads the POMs of reactor projects
+        PomCache.bind( this );
+
         try
         {
             super.execute();
@@ -80,6 +101,11 @@ public class BundleCompilerMojo extends CompilerMojo
 
             throw e;
         }
+        finally
+        {
+            PomCache.release( this );
+            ManifestCache.flush();
+        }
     }
 
     /**
@@ -24,6 +24,9 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.TestCompilerMojo;
 import org.apache.maven.project.MavenProject;
 import org.ops4j.pax.construct.util.DirUtils;
+import org.ops4j.pax.construct.util.ManifestCache;
+import org.ops4j.pax.construct.util.PomCache;
+import org.ops4j.pax.construct.util.UnpackCache;
 
 /**
  * Extends <a href="http://maven.apache.org/plugins/maven-compiler-plugin/testCompile-mojo.html">TestCompilerMojo</a>
@@ -44,6 +47,14 @@ public class BundleTestCompilerMojo extends TestCompilerMojo
      */
     private MavenProject m_project;
 
+    /**
+     * Directory used to cache unpacked Bundle-ClassPath entries, can be shared between projects and builds.
+     * Defaults to target/pax-compiler when not set.
+     * 
+     * @parameter expression="${unpackCache}"
+     */
+    private File unpackCache;
+
     /**
      * {@inheritDoc}
      */
@@ -51,7 +62,14 @@ public class BundleTestCompilerMojo extends TestCompilerMojo
     {
         File outputDir = getOutputDirectory();
         List classpath = super.getClasspathElements();
-        File tempDir = new File( outputDir.getParent(), "pax-compiler" );
+        File tempDir = unpackCache;
+        if( null == tempDir )
+        {
+            tempDir = new File( outputDir.getParent(), "pax-compiler" );
+        }
+
+        // remove copies of bundles that are no longer used by any build sharing this cache
+        UnpackCache.prune( tempDir, UnpackCache.MAX_UNUSED_AGE );
 
         return DirUtils.expandOSGiClassPath( outputDir, classpath, tempDir );
     }
@@ -65,6 +83,9 @@ public class BundleTestCompilerMojo extends TestCompilerMojo
     {
         BundleCompilerMojo.mergeCompilerConfiguration( this, m_project );
 
+        // classpath expansion reads the POMs of reactor projects
+        PomCache.bind( this );
+
         try
         {
             super.execute();
@@ -76,5 +97,10 @@ public class BundleTestCompilerMojo extends TestCompilerMojo
 
             throw e;
         }
+        finally
+        {
+            PomCache.release( this );
+            ManifestCache.flush();
+        }
     }
 }
@@ -16,6 +16,7 @@ package org.ops4j.pax.construct.lifecycle;
  * limitations under the License.
  */
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
@@ -26,12 +27,13 @@ import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
-import java.util.regex.Pattern;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -51,16 +53,12 @@ import org.apache.maven.project.path.PathTranslator;
 import org.apache.maven.shared.osgi.Maven2OsgiConverter;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
-import org.codehaus.plexus.util.xml.Xpp3Dom;
-import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
-import org.codehaus.plexus.util.xml.Xpp3DomWriter;
-import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.ops4j.pax.construct.util.DirUtils;
 import org.ops4j.pax.construct.util.DirUtils.EntryFilter;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.ReflectMojo;
 import org.ops4j.pax.construct.util.StreamFactory;
+import org.ops4j.pax.construct.util.WorkerPool;
 
 /**
  * Extends <a href="http://maven.apache.org/plugins/maven-eclipse-plugin/eclipse-mojo.html">EclipsePlugin</a> to
@@ -103,6 +101,21 @@ public class EclipseOSGiMojo extends EclipsePlugin
      */
     private String fixDependencies;
 
+    /**
+     * Number of threads used to prepare imported bundles and unpack their contents, zero or less means use all
+     * available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
+    /**
+     * When true, skip projects whose POM, bundle, and resolved dependencies haven't changed since the last run.
+     * 
+     * @parameter expression="${incremental}" default-value="false"
+     */
+    private boolean incremental;
+
     /**
      * Provide access to the private fields of the Eclipse mojo
      */
@@ -118,6 +131,11 @@ public class EclipseOSGiMojo extends EclipsePlugin
      */
     private List m_embeddableDependencies;
 
+    /**
+     * Map of artifactId to the first embeddable dependency with that artifactId, built on demand
+     */
+    private Map m_sourceIndex;
+
     /**
      * {@inheritDoc}
      */
@@ -196,6 +214,7 @@ public class EclipseOSGiMojo extends EclipsePlugin
         else
         {
             m_embeddableDependencies = new ArrayList();
+            m_sourceIndex = null;
 
             if( null == m_provisionProject )
             {
@@ -211,13 +230,93 @@ public class EclipseOSGiMojo extends EclipsePlugin
     }
 
     /**
-     * Customize Eclipse project files for Pax-Construct generated bundles
+     * Customize Eclipse project files for Pax-Construct generated bundles, unless nothing has changed since last time
      * 
      * @param deps resolved project dependencies, potentially with sources and javadocs
      * @throws MojoExecutionException
      */
     private void writeBundleConfiguration( IdeDependency[] deps )
         throws MojoExecutionException
+    {
+        InputFingerprint fingerprint = null;
+        if( incremental )
+        {
+            File fingerprintFile = new File( executedProject.getBuild().getDirectory(), "pax-eclipse.fingerprint" );
+            fingerprint = new InputFingerprint( fingerprintFile );
+
+            fingerprint.addFile( "pom", executedProject.getFile() );
+            fingerprint.addFile( "bundle", getBundleFile( executedProject ) );
+            addSettingsToFingerprint( fingerprint );
+
+            for( int i = 0; i < deps.length; i++ )
+            {
+                fingerprint.addValue( "dependency." + i, getDependencyFingerprint( deps[i] ) );
+            }
+
+            if( fingerprint.isUnchanged() && hasEclipseFiles( executedProject.getBasedir() ) )
+            {
+                getLog().info( "Eclipse files for " + executedProject.getId() + " are up to date" );
+                return;
+            }
+        }
+
+        writeBundleFiles( deps );
+
+        if( null != fingerprint )
+        {
+            fingerprint.save();
+        }
+    }
+
+    /**
+     * @param fingerprint input fingerprint
+     */
+    private void addSettingsToFingerprint( InputFingerprint fingerprint )
+    {
+        fingerprint.addValue( "fixDependencies", fixDependencies );
+        fingerprint.addValue( "downloadSources", String.valueOf( downloadSources ) );
+        fingerprint.addValue( "downloadJavadocs", String.valueOf( downloadJavadocs ) );
+    }
+
+    /**
+     * @param dependency resolved IDE dependency
+     * @return details of the dependency that affect the generated Eclipse files
+     */
+    private static String getDependencyFingerprint( IdeDependency dependency )
+    {
+        StringBuffer buf = new StringBuffer( dependency.getId() );
+
+        buf.append( '|' ).append( dependency.getType() );
+        buf.append( '|' ).append( dependency.getFile() );
+        buf.append( '|' ).append( dependency.getSourceAttachment() );
+        buf.append( '|' ).append( dependency.getJavadocAttachment() );
+        buf.append( '|' ).append( dependency.isAddedToClasspath() );
+        buf.append( '|' ).append( dependency.isReferencedProject() );
+        buf.append( '|' ).append( dependency.isOsgiBundle() );
+        buf.append( '|' ).append( dependency.isTestDependency() );
+        buf.append( '|' ).append( dependency.isProvided() );
+
+        return buf.toString();
+    }
+
+    /**
+     * @param baseDir project base directory
+     * @return true if the main Eclipse project files exist, otherwise false
+     */
+    private static boolean hasEclipseFiles( File baseDir )
+    {
+        return new File( baseDir, ".project" ).isFile() && new File( baseDir, ".classpath" ).isFile()
+            && new File( baseDir, "META-INF/MANIFEST.MF" ).isFile();
+    }
+
+    /**
+     * Write Eclipse project files for Pax-Construct generated bundles
+     * 
+     * @param deps resolved project dependencies, potentially with sources and javadocs
+     * @throws MojoExecutionException
+     */
+    private void writeBundleFiles( IdeDependency[] deps )
+        throws MojoExecutionException
     {
         for( int i = 0; i < deps.length; i++ )
         {
@@ -434,7 +533,8 @@ public class EclipseOSGiMojo extends EclipsePlugin
         }
         else
         {
-            DirUtils.unpackBundle( bundleFile, unpackDir, new IncludedContentFilter( getBuildOutputDirectory() ) );
+            EntryFilter filter = new IncludedContentFilter( getBuildOutputDirectory() );
+            DirUtils.unpackBundle( bundleFile, unpackDir, filter, false, threads );
 
             moveMetadata( unpackDir, "META-INF", baseDir );
             moveMetadata( unpackDir, "OSGI-INF", baseDir );
@@ -468,7 +568,9 @@ public class EclipseOSGiMojo extends EclipsePlugin
             mainAttributes.putValue( "Bundle-ClassPath", bundleClassPath );
 
             // add the embedded entries back to the Eclipse classpath
-            addEmbeddedEntriesToEclipseClassPath( tempPath, bundleClassPath );
+            List entries = new ArrayList();
+            addEmbeddedEntries( entries, tempPath, bundleClassPath );
+            appendClassPathEntries( entries );
         }
 
         try
@@ -605,57 +707,144 @@ public class EclipseOSGiMojo extends EclipsePlugin
     }
 
     /**
-     * Add any embedded Bundle-ClassPath entries to the Eclipse classpath and re-attach sources/javadocs
+     * Collect Eclipse classpath entries for any embedded Bundle-ClassPath entries and re-attach sources/javadocs
      * 
+     * @param entries list of formatted Eclipse classpath entries
      * @param bundleLocation relative path to the unpacked bundle
      * @param bundleClassPath the refactored Bundle-ClassPath
      */
-    private void addEmbeddedEntriesToEclipseClassPath( String bundleLocation, String bundleClassPath )
+    private void addEmbeddedEntries( List entries, String bundleLocation, String bundleClassPath )
     {
         String[] classPath = bundleClassPath.split( "," );
         File basedir = executedProject.getBasedir();
 
-        try
+        for( int i = 0; i < classPath.length; i++ )
         {
-            File classPathFile = new File( basedir, ".classpath" );
-            Reader reader = StreamFactory.newXmlReader( classPathFile );
-            Xpp3Dom classPathXML = Xpp3DomBuilder.build( reader );
-            IOUtil.close( reader );
+            String binaryPath = classPath[i].trim();
+
+            if( !".".equals( binaryPath ) && new File( basedir, binaryPath ).exists() )
+            {
+                // find attached sources using the previously cached IDE dependencies
+                File sourcePath = findAttachedSource( bundleLocation, binaryPath );
+
+                // embedded jar/directory needs to be a 'lib' entry
+                entries.add( formatLibraryEntry( binaryPath, sourcePath ) );
+            }
+        }
+    }
+
+    /**
+     * @param path library path
+     * @param sourcePath attached sources, may be null
+     * @return formatted Eclipse classpath entry
+     */
+    private static String formatLibraryEntry( String path, File sourcePath )
+    {
+        StringBuffer buf = new StringBuffer( "  <classpathentry exported=\"true\" kind=\"lib\" path=\"" );
+        buf.append( escapeXml( path ) ).append( '"' );
+        if( null != sourcePath )
+        {
+            buf.append( " sourcepath=\"" ).append( escapeXml( sourcePath.getPath() ) ).append( '"' );
+        }
+        return buf.append( "/>" ).toString();
+    }
 
-            for( int i = 0; i < classPath.length; i++ )
+    /**
+     * @param text attribute text
+     * @return text with XML special characters escaped
+     */
+    private static String escapeXml( String text )
+    {
+        StringBuffer buf = new StringBuffer();
+        for( int i = 0; i < text.length(); i++ )
+        {
+            char c = text.charAt( i );
+            switch( c )
             {
-                String binaryPath = classPath[i].trim();
+                case '&':
+                    buf.append( "&amp;" );
+                    break;
+                case '<':
+                    buf.append( "&lt;" );
+                    break;
+                case '>':
+                    buf.append( "&gt;" );
+                    break;
+                case '"':
+                    buf.append( "&quot;" );
+                    break;
+                default:
+                    buf.append( c );
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Add entries to the current Eclipse .classpath in a single streaming pass, just before the closing element
+     * 
+     * @param entries list of formatted Eclipse classpath entries
+     */
+    private void appendClassPathEntries( List entries )
+    {
+        if( entries.isEmpty() )
+        {
+            return;
+        }
+
+        File classPathFile = new File( executedProject.getBasedir(), ".classpath" );
+        File tempFile = new File( classPathFile.getPath() + ".tmp" );
+
+        BufferedReader reader = null;
+        BufferedWriter writer = null;
+        boolean appended = false;
 
-                if( !".".equals( binaryPath ) && new File( basedir, binaryPath ).exists() )
+        try
+        {
+            reader = new BufferedReader( StreamFactory.newXmlReader( classPathFile ) );
+            writer = new BufferedWriter( StreamFactory.newXmlWriter( tempFile ) );
+
+            for( String line = reader.readLine(); null != line; line = reader.readLine() )
+            {
+                int end = appended ? -1 : line.indexOf( "</classpath>" );
+                if( end >= 0 )
                 {
-                    // embedded jar/directory needs to be a 'lib' entry
-                    Xpp3Dom classPathEntry = new Xpp3Dom( "classpathentry" );
-                    classPathEntry.setAttribute( "exported", "true" );
-                    classPathEntry.setAttribute( "kind", "lib" );
-                    classPathEntry.setAttribute( "path", binaryPath );
-
-                    // find attached sources using the previously cached IDE dependencies
-                    File sourcePath = findAttachedSource( bundleLocation, binaryPath );
-                    if( sourcePath != null )
+                    if( end > 0 )
                     {
-                        classPathEntry.setAttribute( "sourcepath", sourcePath.getPath() );
+                        writer.write( line.substring( 0, end ) );
+                        writer.newLine();
                     }
-
-                    classPathXML.addChild( classPathEntry );
+                    for( Iterator i = entries.iterator(); i.hasNext(); )
+                    {
+                        writer.write( (String) i.next() );
+                        writer.newLine();
+                    }
+                    line = line.substring( end );
+                    appended = true;
                 }
-            }
 
-            Writer writer = StreamFactory.newXmlWriter( classPathFile );
-            Xpp3DomWriter.write( new PrettyPrintXMLWriter( writer ), classPathXML );
-            IOUtil.close( writer );
+                writer.write( line );
+                writer.newLine();
+            }
         }
         catch( IOException e )
         {
             getLog().warn( "Unable to find Eclipse .classpath file" );
         }
-        catch( XmlPullParserException e )
+        finally
+        {
+            IOUtil.close( reader );
+            IOUtil.close( writer );
+        }
+
+        if( !appended )
         {
             getLog().warn( "Unable to parse Eclipse .classpath file" );
+            tempFile.delete();
+        }
+        else if( !classPathFile.delete() || !tempFile.renameTo( classPathFile ) )
+        {
+            getLog().warn( "Unable to update Eclipse .classpath file" );
         }
     }
 
@@ -668,26 +857,62 @@ public class EclipseOSGiMojo extends EclipsePlugin
      */
     private File findAttachedSource( String bundleLocation, String classPathEntry )
     {
-        for( Iterator i = m_embeddableDependencies.iterator(); i.hasNext(); )
+        if( m_embeddableDependencies.isEmpty() )
+        {
+            return null;
+        }
+
+        // equivalent to '.' - source is first in list
+        if( bundleLocation.equals( classPathEntry ) )
         {
-            IdeDependency dependency = (IdeDependency) i.next();
+            return ( (IdeDependency) m_embeddableDependencies.get( 0 ) ).getSourceAttachment();
+        }
 
-            // equivalent to '.' - source is first in list
-            if( bundleLocation.equals( classPathEntry ) )
+        if( null == m_sourceIndex )
+        {
+            m_sourceIndex = new HashMap();
+            for( int i = m_embeddableDependencies.size() - 1; i >= 0; i-- )
             {
-                return dependency.getSourceAttachment();
+                // reverse order, so the first dependency with a given artifactId wins
+                IdeDependency dependency = (IdeDependency) m_embeddableDependencies.get( i );
+                m_sourceIndex.put( dependency.getArtifactId(), new Integer( i ) );
             }
-            else if( Pattern.matches( "^.*[/\\\\]" + dependency.getArtifactId() + "[-.][^/\\\\]*$", classPathEntry ) )
+        }
+
+        // look for "artifactId-..." or "artifactId...." as the last segment of the path
+        int segment = Math.max( classPathEntry.lastIndexOf( '/' ), classPathEntry.lastIndexOf( '\\' ) ) + 1;
+        if( segment == 0 )
+        {
+            return null;
+        }
+
+        String name = classPathEntry.substring( segment );
+
+        int match = Integer.MAX_VALUE;
+        for( int i = 1; i < name.length(); i++ )
+        {
+            char c = name.charAt( i );
+            if( '-' == c || '.' == c )
             {
-                return dependency.getSourceAttachment();
+                Integer index = (Integer) m_sourceIndex.get( name.substring( 0, i ) );
+                if( null != index )
+                {
+                    // earlier dependencies take precedence
+                    match = Math.min( match, index.intValue() );
+                }
             }
         }
 
+        if( match < Integer.MAX_VALUE )
+        {
+            return ( (IdeDependency) m_embeddableDependencies.get( match ) ).getSourceAttachment();
+        }
+
         return null;
     }
 
     /**
-     * Unpack each imported bundle in turn and generate the relevant Eclipse project files
+     * Prepare imported bundles in parallel, then generate the relevant Eclipse project files for each bundle in turn
      * 
      * @throws InvalidDependencyVersionException
      * @throws MojoExecutionException
@@ -701,49 +926,230 @@ public class EclipseOSGiMojo extends EclipsePlugin
         setResolveDependencies( false );
 
         Set artifacts = m_provisionProject.createArtifacts( artifactFactory, null, null );
-        for( Iterator i = artifacts.iterator(); i.hasNext(); )
+        WorkerPool pool = new WorkerPool( "pax-eclipse", WorkerPool.getWorkerCount( threads ) );
+
+        try
+        {
+            // downloading and unpacking can happen in parallel...
+            List bundles = new ArrayList();
+            for( Iterator i = artifacts.iterator(); i.hasNext(); )
+            {
+                ImportedBundle bundle = new ImportedBundle( (Artifact) i.next() );
+                pool.execute( bundle );
+                bundles.add( bundle );
+            }
+
+            // ...but the Eclipse plugin can only generate one project at a time
+            for( int i = 0; i < bundles.size(); i++ )
+            {
+                ImportedBundle bundle = (ImportedBundle) bundles.get( i );
+                String progress = " (" + ( i + 1 ) + " of " + bundles.size() + ')';
+
+                bundle.waitUntilPrepared();
+                if( null != bundle.m_problem )
+                {
+                    getLog().warn( bundle.m_problem + progress );
+                }
+                else if( bundle.m_upToDate )
+                {
+                    getLog().info( "Eclipse project for bundle " + bundle.m_artifact + " is up to date" + progress );
+                }
+                else
+                {
+                    getLog().info( "Generating Eclipse project for bundle " + bundle.m_artifact + progress );
+                    generateImportedProject( bundle );
+                }
+            }
+
+            pool.join();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Call the Eclipse plugin to generate project files for a prepared imported bundle
+     * 
+     * @param bundle prepared imported bundle
+     * @throws MojoExecutionException
+     */
+    private void generateImportedProject( ImportedBundle bundle )
+        throws MojoExecutionException
+    {
+        MavenProject dependencyProject = bundle.m_project;
+        dependencyProject.setArtifact( bundle.m_artifact );
+
+        setExecutedProject( dependencyProject );
+        setProject( dependencyProject );
+
+        // trick Eclipse plugin to do the right thing
+        setBuildOutputDirectory( new File( bundle.m_baseDir, ".ignore" ) );
+        setEclipseProjectDir( bundle.m_baseDir );
+
+        try
+        {
+            // call the Eclipse plugin
+            execute();
+
+            if( null != bundle.m_fingerprint )
+            {
+                bundle.m_fingerprint.save();
+            }
+        }
+        catch( MojoFailureException e )
+        {
+            getLog().warn( "Problem generating Eclipse files for artifact " + bundle.m_artifact );
+        }
+    }
+
+    /**
+     * Imported bundle that is downloaded, unpacked, and given a local POM on a worker thread
+     */
+    private final class ImportedBundle
+        implements Runnable
+    {
+        /**
+         * Imported bundle artifact
+         */
+        final Artifact m_artifact;
+
+        /**
+         * Local project directory underneath the provisioning POM's directory
+         */
+        final File m_baseDir;
+
+        /**
+         * Input fingerprint, null when not running incrementally
+         */
+        InputFingerprint m_fingerprint;
+
+        /**
+         * Downloaded bundle project
+         */
+        MavenProject m_project;
+
+        /**
+         * True when the existing Eclipse project is up to date
+         */
+        boolean m_upToDate;
+
+        /**
+         * Reason why this bundle should be skipped, null if there was no problem
+         */
+        String m_problem;
+
+        /**
+         * True once the bundle has been prepared
+         */
+        private boolean m_prepared;
+
+        /**
+         * @param artifact imported bundle artifact
+         */
+        ImportedBundle( Artifact artifact )
         {
-            Artifact artifact = (Artifact) i.next();
+            m_artifact = artifact;
 
             // store project locally underneath the provisioning POM's directory
             File groupDir = new File( m_provisionProject.getBasedir(), "target/" + artifact.getGroupId() );
-            File baseDir = new File( groupDir, artifact.getArtifactId() + '-' + artifact.getVersion() );
+            m_baseDir = new File( groupDir, artifact.getArtifactId() + '-' + artifact.getVersion() );
+        }
 
-            // download and unpack the bundle
-            if( !PomUtils.downloadFile( artifact, artifactResolver, remoteArtifactRepositories, localRepository ) )
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            try
+            {
+                prepare();
+            }
+            catch( Throwable e )
+            {
+                // must always record something, as the main thread is waiting for this bundle
+                m_problem = "Problem preparing bundle " + m_artifact + ": " + e;
+            }
+            finally
             {
-                getLog().warn( "Skipping missing bundle " + artifact );
-                continue;
+                synchronized( this )
+                {
+                    m_prepared = true;
+                    notifyAll();
+                }
             }
+        }
 
-            DirUtils.unpackBundle( artifact.getFile(), baseDir, null );
+        /**
+         * Wait for a worker thread to finish preparing this bundle
+         */
+        synchronized void waitUntilPrepared()
+        {
+            while( !m_prepared )
+            {
+                try
+                {
+                    wait();
+                }
+                catch( InterruptedException e )
+                {
+                    throw new RuntimeException( "Interrupted while waiting for " + m_artifact );
+                }
+            }
+        }
 
-            // download the bundle POM and store locally
-            MavenProject dependencyProject = writeProjectPom( baseDir, artifact );
-            if( null == dependencyProject )
+        /**
+         * Download and unpack the bundle, along with its POM and sources
+         */
+        private void prepare()
+        {
+            if( !PomUtils.downloadFile( m_artifact, artifactResolver, remoteArtifactRepositories, localRepository ) )
             {
-                getLog().warn( "Skipping missing bundle " + artifact );
-                continue;
+                m_problem = "Skipping missing bundle " + m_artifact;
+                return;
             }
 
-            dependencyProject.setArtifact( artifact );
+            if( incremental )
+            {
+                File groupDir = m_baseDir.getParentFile();
+                m_fingerprint = new InputFingerprint( new File( groupDir, m_baseDir.getName() + ".fingerprint" ) );
+                m_fingerprint.addFile( "bundle", m_artifact.getFile() );
+                addSettingsToFingerprint( m_fingerprint );
 
-            setExecutedProject( dependencyProject );
-            setProject( dependencyProject );
+                if( m_fingerprint.isUnchanged() && new File( m_baseDir, "pom.xml" ).isFile()
+                    && hasEclipseFiles( m_baseDir ) )
+                {
+                    m_upToDate = true;
+                    return;
+                }
+            }
 
-            // trick Eclipse plugin to do the right thing
-            setBuildOutputDirectory( new File( baseDir, ".ignore" ) );
-            setEclipseProjectDir( baseDir );
+            // only unpack entries that have changed since the last time (already running on a worker thread)
+            DirUtils.unpackBundle( m_artifact.getFile(), m_baseDir, null, true, 1 );
 
+            // download the bundle POM and store locally
             try
             {
-                // call the Eclipse plugin
-                getLog().info( "Generating Eclipse project for bundle " + artifact );
-                execute();
+                m_project = writeProjectPom( m_baseDir, m_artifact );
             }
-            catch( MojoFailureException e )
+            catch( ProjectBuildingException e )
             {
-                getLog().warn( "Problem generating Eclipse files for artifact " + artifact );
+                m_problem = "Unable to build POM for bundle " + m_artifact + ", skipping it";
+                return;
+            }
+            catch( IOException e )
+            {
+                m_problem = "Unable to write POM for bundle " + m_artifact + ", skipping it";
+                return;
+            }
+
+            if( downloadSources )
+            {
+                // fetch sources now, so they're available locally when generating the project
+                PomUtils.downloadFile( artifactFactory.createArtifactWithClassifier( m_artifact.getGroupId(),
+                    m_artifact.getArtifactId(), m_artifact.getVersion(), "java-source", "sources" ),
+                    artifactResolver, remoteArtifactRepositories, localRepository );
             }
         }
     }
@@ -754,38 +1160,41 @@ public class EclipseOSGiMojo extends EclipsePlugin
      * @param baseDir base directory
      * @param artifact Maven artifact
      * @return the downloaded project
+     * @throws ProjectBuildingException
+     * @throws IOException
      */
     private MavenProject writeProjectPom( File baseDir, Artifact artifact )
+        throws ProjectBuildingException,
+        IOException
     {
-        MavenProject pom = null;
-
         String groupId = artifact.getGroupId();
         String artifactId = artifact.getArtifactId();
         String version = artifact.getVersion();
 
         Artifact pomArtifact = artifactFactory.createProjectArtifact( groupId, artifactId, version );
 
-        try
+        MavenProject pom;
+
+        // the project builder is not thread-safe, so only let one worker use it at a time
+        synchronized( m_mavenProjectBuilder )
         {
             pom = m_mavenProjectBuilder.buildFromRepository( pomArtifact, remoteArtifactRepositories, localRepository );
+        }
 
-            // need this when using Maven 2.1 which doesn't do any alignment
-            m_pathTranslator.alignToBaseDirectory( pom.getModel(), baseDir );
+        // need this when using Maven 2.1 which doesn't do any alignment
+        m_pathTranslator.alignToBaseDirectory( pom.getModel(), baseDir );
 
-            File pomFile = new File( baseDir, "pom.xml" );
+        File pomFile = new File( baseDir, "pom.xml" );
 
-            Writer writer = StreamFactory.newXmlWriter( pomFile );
+        Writer writer = StreamFactory.newXmlWriter( pomFile );
+        try
+        {
             pom.writeModel( writer );
             pom.setFile( pomFile );
-            IOUtil.close( writer );
-        }
-        catch( ProjectBuildingException e )
-        {
-            getLog().warn( "Unable to build POM for artifact " + pomArtifact );
         }
-        catch( IOException e )
+        finally
         {
-            getLog().warn( "Unable to write POM for artifact " + pomArtifact );
+            IOUtil.close( writer );
         }
 
         return pom;
@@ -822,7 +1231,9 @@ public class EclipseOSGiMojo extends EclipsePlugin
         }
 
         // set PDE classpath to point to unpacked bundle
-        attachImportedContent( sourceArtifact.getFile() );
+        File sources = sourceArtifact.getFile();
+        List entries = new ArrayList();
+        entries.add( formatLibraryEntry( ".", null != sources && sources.exists() ? sources : null ) );
 
         String baseDir = executedProject.getBasedir().getPath();
         File manifestFile = new File( baseDir, "META-INF/MANIFEST.MF" );
@@ -834,47 +1245,11 @@ public class EclipseOSGiMojo extends EclipsePlugin
         if( null != bundleClassPath )
         {
             // add any embedded entries to the default Eclipse classpath
-            addEmbeddedEntriesToEclipseClassPath( baseDir, bundleClassPath );
+            addEmbeddedEntries( entries, baseDir, bundleClassPath );
         }
 
-        createBuildProperties( new File( baseDir ), null );
-    }
-
-    /**
-     * Add a classpath entry for the unpacked imported bundle and attach it to the given source
-     * 
-     * @param sources attached bundle sources
-     */
-    private void attachImportedContent( File sources )
-    {
-        try
-        {
-            File classPathFile = new File( executedProject.getBasedir(), ".classpath" );
-            Reader reader = StreamFactory.newXmlReader( classPathFile );
-            Xpp3Dom classPathXML = Xpp3DomBuilder.build( reader );
-            IOUtil.close( reader );
-
-            Xpp3Dom classPathEntry = new Xpp3Dom( "classpathentry" );
-            classPathEntry.setAttribute( "exported", "true" );
-            classPathEntry.setAttribute( "kind", "lib" );
-            classPathEntry.setAttribute( "path", "." );
-            if( sources != null && sources.exists() )
-            {
-                classPathEntry.setAttribute( "sourcepath", sources.getPath() );
-            }
-            classPathXML.addChild( classPathEntry );
+        appendClassPathEntries( entries );
 
-            Writer writer = StreamFactory.newXmlWriter( classPathFile );
-            Xpp3DomWriter.write( new PrettyPrintXMLWriter( writer ), classPathXML );
-            IOUtil.close( writer );
-        }
-        catch( IOException e )
-        {
-            getLog().warn( "Unable to find Eclipse .classpath file" );
-        }
-        catch( XmlPullParserException e )
-        {
-            getLog().warn( "Unable to parse Eclipse .classpath file" );
-        }
+        createBuildProperties( new File( baseDir ), null );
     }
 }
@@ -0,0 +1,166 @@
+package org.ops4j.pax.construct.lifecycle;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.ops4j.pax.construct.util.DirUtils;
+
+/**
+ * Records the inputs used by the last run of a goal, so we can tell when it is being asked to do the same work again.
+ * File checksums are only recalculated when the size or timestamp of a file has changed since the last run.
+ */
+final class InputFingerprint
+{
+    /**
+     * Separates the size, timestamp, and checksum of each recorded file
+     */
+    private static final String SEPARATOR = "|";
+
+    /**
+     * Location of the saved fingerprint
+     */
+    private final File m_file;
+
+    /**
+     * Fingerprint saved by the last run
+     */
+    private final Properties m_previous;
+
+    /**
+     * Fingerprint of the current run
+     */
+    private final Properties m_current;
+
+    /**
+     * @param file location of the saved fingerprint
+     */
+    InputFingerprint( File file )
+    {
+        m_file = file;
+        m_previous = new Properties();
+        m_current = new Properties();
+
+        if( file.isFile() )
+        {
+            InputStream in = null;
+            try
+            {
+                in = new FileInputStream( file );
+                m_previous.load( in );
+            }
+            catch( IOException e )
+            {
+                // treat as a fresh run
+                m_previous.clear();
+            }
+            finally
+            {
+                IOUtil.close( in );
+            }
+        }
+    }
+
+    /**
+     * @param key unique identifier
+     * @param value current value
+     */
+    void addValue( String key, String value )
+    {
+        m_current.setProperty( key, null == value ? "" : value );
+    }
+
+    /**
+     * @param key unique identifier
+     * @param file current file, may be null
+     */
+    void addFile( String key, File file )
+    {
+        if( null == file || !file.isFile() )
+        {
+            addValue( key, "" );
+            return;
+        }
+
+        String metadata = file.length() + SEPARATOR + file.lastModified() + SEPARATOR;
+
+        // reuse the old checksum if the file doesn't appear to have changed
+        String previous = m_previous.getProperty( key );
+        if( null != previous && previous.startsWith( metadata ) )
+        {
+            addValue( key, previous );
+        }
+        else
+        {
+            addValue( key, metadata + checksum( file ) );
+        }
+    }
+
+    /**
+     * @return true if the current inputs match the last run, otherwise false
+     */
+    boolean isUnchanged()
+    {
+        return !m_previous.isEmpty() && m_previous.equals( m_current );
+    }
+
+    /**
+     * Save the current fingerprint, ready for the next run
+     */
+    void save()
+    {
+        OutputStream out = null;
+        try
+        {
+            m_file.getParentFile().mkdirs();
+            out = new FileOutputStream( m_file );
+            m_current.store( out, "Pax-Construct input fingerprint" );
+        }
+        catch( IOException e )
+        {
+            // not fatal, the next run just won't be incremental
+            m_file.delete();
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return hex encoded checksum of the file contents, empty if the file could not be read
+     */
+    private static String checksum( File file )
+    {
+        try
+        {
+            return DirUtils.calculateChecksum( file );
+        }
+        catch( IOException e )
+        {
+            return "";
+        }
+    }
+}
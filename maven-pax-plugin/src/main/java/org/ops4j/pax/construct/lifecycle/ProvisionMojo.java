@@ -26,8 +26,13 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -42,7 +47,8 @@ import org.apache.maven.artifact.repository.ArtifactRepositoryFactory;
 import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
 import org.apache.maven.artifact.repository.layout.ArtifactRepositoryLayout;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
-import org.apache.maven.model.Dependency;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
@@ -52,8 +58,12 @@ import org.apache.maven.project.artifact.InvalidDependencyVersionException;
 import org.apache.maven.settings.Mirror;
 import org.apache.maven.settings.Settings;
 import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.PrettyPrintXMLWriter;
+import org.codehaus.plexus.util.xml.XMLWriter;
+import org.ops4j.pax.construct.util.ManifestCache;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.StreamFactory;
+import org.ops4j.pax.construct.util.WorkerPool;
 
 /**
  * Provision all local and imported bundles onto the selected OSGi framework
@@ -92,9 +102,24 @@ public class ProvisionMojo extends AbstractMojo
     private static final String PAX_RUNNER_METHOD = "org.ops4j.pax.runner.Run";
 
     /**
-     * Accumulated set of bundles to be deployed
+     * Pax-Runner entry points loaded during this Maven session, keyed by runner artifact, version, and classifier
      */
-    private static List m_bundleIds;
+    private static final Map RUNNER_ENTRY_POINTS = new HashMap();
+
+    /**
+     * Accumulated set of bundles to be deployed, in the order they were found
+     */
+    private Set m_bundleIds;
+
+    /**
+     * Potential bundles waiting to be resolved, in the order they were found
+     */
+    private List m_candidates;
+
+    /**
+     * Ids of potential bundles found so far, used to avoid resolving the same artifact twice
+     */
+    private Set m_candidateIds;
 
     /**
      * Component for resolving Maven metadata
@@ -237,6 +262,20 @@ public class ProvisionMojo extends AbstractMojo
      */
     private String[] provision;
 
+    /**
+     * Number of threads used to resolve and test bundles, zero or less means use all available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
+    /**
+     * When the same bundle is found with different versions, only deploy the newest version.
+     * 
+     * @parameter expression="${keepNewest}"
+     */
+    private boolean keepNewest;
+
     /**
      * Component factory for Maven repositories.
      * 
@@ -267,19 +306,33 @@ public class ProvisionMojo extends AbstractMojo
     public void execute()
         throws MojoExecutionException
     {
-        m_bundleIds = new ArrayList();
+        m_bundleIds = new LinkedHashSet();
+
+        m_candidates = new ArrayList();
+        m_candidateIds = new HashSet();
 
         if( deployPoms != null )
         {
             addAdditionalPoms();
         }
 
-        if( m_project.getFile() != null )
+        try
         {
-            for( Iterator i = m_reactorProjects.iterator(); i.hasNext(); )
+            if( m_project.getFile() != null )
             {
-                addProjectBundles( (MavenProject) i.next(), false == noDependencies );
+                for( Iterator i = m_reactorProjects.iterator(); i.hasNext(); )
+                {
+                    addProjectBundles( (MavenProject) i.next(), false == noDependencies );
+                }
             }
+
+            resolveCandidates();
+            checkVersionConflicts();
+        }
+        finally
+        {
+            // bundle checks use the manifest cache
+            ManifestCache.flush();
         }
 
         setupRuntimeHelpers();
@@ -347,10 +400,8 @@ public class ProvisionMojo extends AbstractMojo
      */
     private void addProjectBundles( MavenProject project, boolean checkDependencies )
     {
-        if( PomUtils.isBundleProject( project, m_resolver, m_remoteRepos, m_localRepo, true ) )
-        {
-            provisionBundle( project.getArtifact() );
-        }
+        // full bundle test is done later on, when resolving candidates
+        provisionBundle( project.getArtifact(), PomUtils.isBundleProject( project ) );
 
         if( checkDependencies || isProvisioningPom( project ) )
         {
@@ -371,40 +422,183 @@ public class ProvisionMojo extends AbstractMojo
             Artifact artifact = (Artifact) i.next();
             if( !artifact.isOptional() && !Artifact.SCOPE_TEST.equals( artifact.getScope() ) )
             {
-                provisionBundle( artifact );
+                provisionBundle( artifact, true );
             }
         }
     }
 
     /**
      * @param bundle potential bundle artifact
+     * @param warn when true, warn if the artifact is missing or not a bundle
      */
-    private void provisionBundle( Artifact bundle )
+    private void provisionBundle( Artifact bundle, boolean warn )
     {
-        if( "pom".equals( bundle.getType() ) )
+        if( null == bundle || "pom".equals( bundle.getType() ) )
         {
             return;
         }
 
-        // force download here, as next check tries to avoid downloading where possible
-        if( !PomUtils.downloadFile( bundle, m_resolver, m_remoteRepos, m_localRepo ) )
+        if( m_candidateIds.add( bundle.getId() ) )
         {
-            getLog().warn( "Skipping missing artifact " + bundle );
-            return;
+            m_candidates.add( new BundleCandidate( bundle, warn ) );
         }
+    }
 
-        if( PomUtils.isBundleArtifact( bundle, m_resolver, m_remoteRepos, m_localRepo, true ) )
+    /**
+     * Download and test all potential bundles in parallel, then add the real bundles to the deploy list in the same
+     * order that they were found, so the deployment is the same no matter how many threads are used
+     */
+    private void resolveCandidates()
+    {
+        WorkerPool pool = new WorkerPool( "pax-provision", WorkerPool.getWorkerCount( threads ) );
+
+        try
         {
-            String version = PomUtils.getMetaVersion( bundle );
-            String id = bundle.getGroupId() + ':' + bundle.getArtifactId() + ':' + version + ':' + bundle.getType();
-            if( !m_bundleIds.contains( id ) )
+            for( Iterator i = m_candidates.iterator(); i.hasNext(); )
             {
-                m_bundleIds.add( id );
+                pool.execute( (BundleCandidate) i.next() );
             }
+            pool.join();
         }
-        else
+        finally
+        {
+            pool.shutdown();
+        }
+
+        for( Iterator i = m_candidates.iterator(); i.hasNext(); )
+        {
+            BundleCandidate candidate = (BundleCandidate) i.next();
+            Artifact bundle = candidate.m_artifact;
+
+            if( !candidate.m_downloaded )
+            {
+                if( candidate.m_warn )
+                {
+                    getLog().warn( "Skipping missing artifact " + bundle );
+                }
+            }
+            else if( candidate.m_isBundle )
+            {
+                m_bundleIds.add( new BundleId( bundle ) );
+            }
+            else if( candidate.m_warn )
+            {
+                getLog().warn( "Skipping non-bundle artifact " + bundle );
+            }
+        }
+
+        m_candidates.clear();
+        m_candidateIds.clear();
+    }
+
+    /**
+     * Warn about any bundles that are going to be deployed with different versions, and optionally only keep the newest
+     */
+    private void checkVersionConflicts()
+    {
+        Map versions = new LinkedHashMap();
+        for( Iterator i = m_bundleIds.iterator(); i.hasNext(); )
+        {
+            BundleId id = (BundleId) i.next();
+
+            String key = id.m_groupId + ':' + id.m_artifactId;
+            List ids = (List) versions.get( key );
+            if( null == ids )
+            {
+                ids = new ArrayList();
+                versions.put( key, ids );
+            }
+
+            ids.add( id );
+        }
+
+        for( Iterator i = versions.entrySet().iterator(); i.hasNext(); )
         {
-            getLog().warn( "Skipping non-bundle artifact " + bundle );
+            Map.Entry entry = (Map.Entry) i.next();
+            List ids = (List) entry.getValue();
+
+            String newest = null;
+            ArtifactVersion newestVersion = null;
+            Set distinct = new LinkedHashSet();
+            for( Iterator j = ids.iterator(); j.hasNext(); )
+            {
+                BundleId id = (BundleId) j.next();
+                ArtifactVersion version = new DefaultArtifactVersion( id.m_version );
+                if( distinct.add( id.m_version ) && ( null == newest || version.compareTo( newestVersion ) > 0 ) )
+                {
+                    newest = id.m_version;
+                    newestVersion = version;
+                }
+            }
+
+            if( distinct.size() < 2 )
+            {
+                continue;
+            }
+
+            getLog().warn( "Found multiple versions of " + entry.getKey() + " " + distinct );
+            if( keepNewest )
+            {
+                getLog().warn( "Only deploying version " + newest );
+                for( Iterator j = ids.iterator(); j.hasNext(); )
+                {
+                    BundleId id = (BundleId) j.next();
+                    if( !newest.equals( id.m_version ) )
+                    {
+                        m_bundleIds.remove( id );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Potential bundle, which is downloaded and tested on a worker thread
+     */
+    private final class BundleCandidate
+        implements Runnable
+    {
+        /**
+         * Potential bundle artifact
+         */
+        final Artifact m_artifact;
+
+        /**
+         * When true, warn if the artifact is missing or not a bundle
+         */
+        final boolean m_warn;
+
+        /**
+         * True if the artifact was downloaded
+         */
+        boolean m_downloaded;
+
+        /**
+         * True if the artifact is a bundle
+         */
+        boolean m_isBundle;
+
+        /**
+         * @param artifact potential bundle artifact
+         * @param warn when true, warn if the artifact is missing or not a bundle
+         */
+        BundleCandidate( Artifact artifact, boolean warn )
+        {
+            m_artifact = artifact;
+            m_warn = warn;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            // force download here, as next check tries to avoid downloading where possible
+            m_downloaded = PomUtils.downloadFile( m_artifact, m_resolver, m_remoteRepos, m_localRepo );
+            if( m_downloaded )
+            {
+                m_isBundle = PomUtils.isBundleArtifact( m_artifact, m_resolver, m_remoteRepos, m_localRepo, true );
+            }
         }
     }
 
@@ -446,9 +640,19 @@ public class ProvisionMojo extends AbstractMojo
             getLog().info( "~~~~~~~~~~~~~~~~~~~" );
         }
 
-        List bundles = resolveProvisionedBundles();
-        MavenProject deployProject = createDeploymentProject( bundles );
-        installDeploymentPom( deployProject );
+        DeploymentPom deployProject = createDeploymentPom();
+
+        InputFingerprint fingerprint = createFingerprint( deployProject );
+        if( fingerprint.isUnchanged() && isDeploymentPomInstalled( deployProject ) )
+        {
+            getLog().info( "Provisioned bundles are unchanged, reusing existing deployment POM" );
+        }
+        else
+        {
+            writeDeploymentPom( deployProject );
+            installDeploymentPom( deployProject );
+            fingerprint.save();
+        }
 
         if( !deploy )
         {
@@ -493,13 +697,13 @@ public class ProvisionMojo extends AbstractMojo
         Pattern classicVersion = Pattern.compile( "0\\.[1-4]\\.\\d" );
         if( classicVersion.matcher( runner ).matches() )
         {
-            Class clazz = loadRunnerClass( "org.ops4j.pax", "runner", PAX_RUNNER_METHOD, false );
-            deployRunnerClassic( clazz, deployProject, repoListBuilder.toString() );
+            Method entryPoint = loadRunnerEntryPoint( "org.ops4j.pax", "runner", PAX_RUNNER_METHOD, false );
+            deployRunnerClassic( entryPoint, deployProject, repoListBuilder.toString() );
         }
         else
         {
-            Class clazz = loadRunnerClass( PAX_RUNNER_GROUP, PAX_RUNNER_ARTIFACT, PAX_RUNNER_METHOD, true );
-            deployRunnerNG( clazz, deployProject, repoListBuilder.toString() );
+            Method entryPoint = loadRunnerEntryPoint( PAX_RUNNER_GROUP, PAX_RUNNER_ARTIFACT, PAX_RUNNER_METHOD, true );
+            deployRunnerNG( entryPoint, deployProject, repoListBuilder.toString() );
         }
     }
 
@@ -554,103 +758,163 @@ public class ProvisionMojo extends AbstractMojo
     }
 
     /**
-     * Attempt to resolve each provisioned bundle, and warn about any we can't find
+     * Create new POM (based on the root POM coordinates) which lists the deployed bundles as dependencies
      * 
-     * @return list of bundles to be deployed (as Maven dependencies)
+     * @return deployment POM
      */
-    private List resolveProvisionedBundles()
+    private DeploymentPom createDeploymentPom()
     {
-        List dependencies = new ArrayList();
-        for( Iterator i = m_bundleIds.iterator(); i.hasNext(); )
+        String groupId;
+        String artifactId;
+        String version;
+        File basedir;
+
+        if( null == m_project.getFile() )
         {
-            String id = (String) i.next();
-            String[] fields = id.split( ":" );
+            groupId = "examples";
+            artifactId = "pax-provision";
+            version = "1.0-SNAPSHOT";
+            basedir = null;
+        }
+        else
+        {
+            groupId = m_project.getGroupId();
+            artifactId = m_project.getArtifactId();
+            version = m_project.getVersion();
+            basedir = m_project.getBasedir();
+        }
 
-            Dependency dep = new Dependency();
-            dep.setGroupId( fields[0] );
-            dep.setArtifactId( fields[1] );
-            dep.setVersion( fields[2] );
-            dep.setType( fields[3] );
-            dep.setScope( Artifact.SCOPE_PROVIDED );
+        String internalId = PomUtils.getCompoundId( groupId, artifactId );
+        File deployFile = new File( basedir, "runner/deploy-pom.xml" );
 
-            dependencies.add( dep );
-        }
-        return dependencies;
+        return new DeploymentPom( internalId + ".build", "deployment", version, deployFile );
     }
 
     /**
-     * Create new POM (based on the root POM) which lists the deployed bundles as dependencies
+     * Stream deployment POM to the runner directory, only listing the bundles to be deployed
      * 
-     * @param bundles list of bundles to be deployed
-     * @return deployment project
+     * @param project deployment POM
      * @throws MojoExecutionException
      */
-    private MavenProject createDeploymentProject( List bundles )
+    private void writeDeploymentPom( DeploymentPom project )
         throws MojoExecutionException
     {
-        MavenProject deployProject;
+        File deployFile = project.m_file;
+        deployFile.getParentFile().mkdirs();
 
-        if( null == m_project.getFile() )
+        Writer writer = null;
+        try
         {
-            deployProject = new MavenProject();
-            deployProject.setGroupId( "examples" );
-            deployProject.setArtifactId( "pax-provision" );
-            deployProject.setVersion( "1.0-SNAPSHOT" );
+            writer = StreamFactory.newXmlWriter( deployFile );
+            XMLWriter xml = new PrettyPrintXMLWriter( writer, "UTF-8", null );
+
+            xml.startElement( "project" );
+            writeElement( xml, "modelVersion", "4.0.0" );
+            writeElement( xml, "groupId", project.m_groupId );
+            writeElement( xml, "artifactId", project.m_artifactId );
+            writeElement( xml, "version", project.m_version );
+            writeElement( xml, "packaging", "pom" );
+
+            xml.startElement( "dependencies" );
+            for( Iterator i = m_bundleIds.iterator(); i.hasNext(); )
+            {
+                BundleId id = (BundleId) i.next();
+
+                xml.startElement( "dependency" );
+                writeElement( xml, "groupId", id.m_groupId );
+                writeElement( xml, "artifactId", id.m_artifactId );
+                writeElement( xml, "version", id.m_version );
+                if( !"jar".equals( id.m_type ) )
+                {
+                    writeElement( xml, "type", id.m_type );
+                }
+                writeElement( xml, "scope", Artifact.SCOPE_PROVIDED );
+                xml.endElement();
+            }
+            xml.endElement();
+
+            xml.endElement();
+            writer.write( '\n' );
         }
-        else
+        catch( IOException e )
         {
-            deployProject = new MavenProject( m_project );
+            throw new MojoExecutionException( "Unable to write deployment POM " + deployFile );
         }
-
-        String internalId = PomUtils.getCompoundId( deployProject.getGroupId(), deployProject.getArtifactId() );
-        deployProject.setGroupId( internalId + ".build" );
-        deployProject.setArtifactId( "deployment" );
-
-        // remove unnecessary cruft
-        deployProject.setPackaging( "pom" );
-        deployProject.getModel().setModules( null );
-        deployProject.getModel().setDependencies( bundles );
-        deployProject.getModel().setPluginRepositories( null );
-        deployProject.getModel().setReporting( null );
-        deployProject.setBuild( null );
-
-        File deployFile = new File( deployProject.getBasedir(), "runner/deploy-pom.xml" );
-
-        deployFile.getParentFile().mkdirs();
-        deployProject.setFile( deployFile );
-
-        try
+        finally
         {
-            Writer writer = StreamFactory.newXmlWriter( deployFile );
-            deployProject.writeModel( writer );
             IOUtil.close( writer );
         }
-        catch( IOException e )
+    }
+
+    /**
+     * @param xml XML writer
+     * @param name element name
+     * @param value element text
+     */
+    private static void writeElement( XMLWriter xml, String name, String value )
+    {
+        xml.startElement( name );
+        xml.writeText( value );
+        xml.endElement();
+    }
+
+    /**
+     * Fingerprint the deployment POM inputs: the root POM and the ordered list of bundles along with their contents
+     * 
+     * @param project deployment POM
+     * @return fingerprint of the current deployment
+     */
+    private InputFingerprint createFingerprint( DeploymentPom project )
+    {
+        File fingerprintFile = new File( project.m_file.getParentFile(), "deploy-pom.fingerprint" );
+        InputFingerprint fingerprint = new InputFingerprint( fingerprintFile );
+
+        fingerprint.addFile( "pom", m_project.getFile() );
+        fingerprint.addValue( "bundles", m_bundleIds.toString() );
+        for( Iterator i = m_bundleIds.iterator(); i.hasNext(); )
         {
-            throw new MojoExecutionException( "Unable to write deployment POM " + deployFile );
+            BundleId id = (BundleId) i.next();
+            fingerprint.addFile( id.toString(), id.m_file );
         }
 
-        return deployProject;
+        return fingerprint;
+    }
+
+    /**
+     * @param project deployment POM
+     * @return true if the deployment POM is available in the runner directory and the local Maven repository
+     */
+    private boolean isDeploymentPomInstalled( DeploymentPom project )
+    {
+        Artifact pomArtifact = getDeploymentPomArtifact( project );
+        File installedPom = new File( m_localRepo.getBasedir(), m_localRepo.pathOf( pomArtifact ) );
+
+        return project.m_file.isFile() && installedPom.isFile();
+    }
+
+    /**
+     * @param project deployment POM
+     * @return artifact representing the deployment POM
+     */
+    private Artifact getDeploymentPomArtifact( DeploymentPom project )
+    {
+        return m_factory.createProjectArtifact( project.m_groupId, project.m_artifactId, project.m_version );
     }
 
     /**
      * Install deployment POM in the local Maven repository
      * 
-     * @param project deployment project
+     * @param project deployment POM
      * @throws MojoExecutionException
      */
-    private void installDeploymentPom( MavenProject project )
+    private void installDeploymentPom( DeploymentPom project )
         throws MojoExecutionException
     {
-        String groupId = project.getGroupId();
-        String artifactId = project.getArtifactId();
-        String version = project.getVersion();
-
-        Artifact pomArtifact = m_factory.createProjectArtifact( groupId, artifactId, version );
+        Artifact pomArtifact = getDeploymentPomArtifact( project );
 
         try
         {
-            m_installer.install( project.getFile(), pomArtifact, m_localRepo );
+            m_installer.install( project.m_file, pomArtifact, m_localRepo );
         }
         catch( ArtifactInstallationException e )
         {
@@ -659,16 +923,17 @@ public class ProvisionMojo extends AbstractMojo
     }
 
     /**
-     * Dynamically resolve and load the Pax-Runner class
+     * Dynamically resolve and load the Pax-Runner entry point, reusing any previously loaded runner with the same
+     * version and classifier
      * 
      * @param groupId pax-runner group id
      * @param artifactId pax-runner artifact id
      * @param mainClass main pax-runner classname
      * @param needClassifier classify pax-runner artifact according to current JVM
-     * @return main pax-runner class
+     * @return main pax-runner method
      * @throws MojoExecutionException
      */
-    private Class loadRunnerClass( String groupId, String artifactId, String mainClass, boolean needClassifier )
+    private Method loadRunnerEntryPoint( String groupId, String artifactId, String mainClass, boolean needClassifier )
         throws MojoExecutionException
     {
         String jdk = null;
@@ -677,6 +942,36 @@ public class ProvisionMojo extends AbstractMojo
             jdk = "jdk14";
         }
 
+        String key = groupId + ':' + artifactId + ':' + runner + ':' + jdk;
+        synchronized( RUNNER_ENTRY_POINTS )
+        {
+            Method entryPoint = (Method) RUNNER_ENTRY_POINTS.get( key );
+            if( null == entryPoint )
+            {
+                entryPoint = createRunnerEntryPoint( groupId, artifactId, mainClass, jdk );
+                RUNNER_ENTRY_POINTS.put( key, entryPoint );
+            }
+            else
+            {
+                getLog().debug( "Reusing Pax-Runner " + key );
+            }
+            return entryPoint;
+        }
+    }
+
+    /**
+     * Resolve Pax-Runner and load its entry point in a new classloader
+     * 
+     * @param groupId pax-runner group id
+     * @param artifactId pax-runner artifact id
+     * @param mainClass main pax-runner classname
+     * @param jdk pax-runner classifier, may be null
+     * @return main pax-runner method
+     * @throws MojoExecutionException
+     */
+    private Method createRunnerEntryPoint( String groupId, String artifactId, String mainClass, String jdk )
+        throws MojoExecutionException
+    {
         Artifact jarArtifact = m_factory.createArtifactWithClassifier( groupId, artifactId, runner, "jar", jdk );
         if( !PomUtils.downloadFile( jarArtifact, m_resolver, m_remoteRepos, m_localRepo ) )
         {
@@ -693,32 +988,43 @@ public class ProvisionMojo extends AbstractMojo
             throw new MojoExecutionException( "Bad Jar location " + jarArtifact.getFile() );
         }
 
+        Class clazz;
         try
         {
-            ClassLoader loader = new URLClassLoader( urls );
-            Thread.currentThread().setContextClassLoader( loader );
-            return Class.forName( mainClass, true, loader );
+            clazz = Class.forName( mainClass, true, new URLClassLoader( urls ) );
         }
         catch( ClassNotFoundException e )
         {
             throw new MojoExecutionException( "Unable to find entry point " + mainClass + " in " + urls[0] );
         }
+
+        try
+        {
+            return clazz.getMethod( "main", new Class[]
+            {
+                String[].class
+            } );
+        }
+        catch( NoSuchMethodException e )
+        {
+            throw new MojoExecutionException( "Unable to find Pax-Runner entry point" );
+        }
     }
 
     /**
      * Deploy bundles using the 'classic' Pax-Runner
      * 
-     * @param mainClass main Pax-Runner class
-     * @param project deployment project
+     * @param entryPoint main Pax-Runner method
+     * @param project deployment POM
      * @param repositories comma separated list of Maven repositories
      * @throws MojoExecutionException
      */
-    private void deployRunnerClassic( Class mainClass, MavenProject project, String repositories )
+    private void deployRunnerClassic( Method entryPoint, DeploymentPom project, String repositories )
         throws MojoExecutionException
     {
-        String workDir = project.getBasedir() + "/runner";
+        String workDir = project.m_file.getParent();
 
-        String cachedPomName = project.getArtifactId() + '_' + project.getVersion() + ".pom";
+        String cachedPomName = project.m_artifactId + '_' + project.m_version + ".pom";
         File cachedPomFile = new File( workDir + "/lib/" + cachedPomName );
 
         // Force reload of pom
@@ -732,11 +1038,11 @@ public class ProvisionMojo extends AbstractMojo
         String[] deployAppCmds =
         {
             "--dir=" + workDir, "--no-md5", "--platform=" + framework, "--profile=default",
-            "--repository=" + repositories, "--localRepository=" + m_localRepo.getBasedir(), project.getGroupId(),
-            project.getArtifactId(), project.getVersion()
+            "--repository=" + repositories, "--localRepository=" + m_localRepo.getBasedir(), project.m_groupId,
+            project.m_artifactId, project.m_version
         };
 
-        invokePaxRunner( mainClass, deployAppCmds );
+        invokePaxRunner( entryPoint, deployAppCmds );
     }
 
 	/**
@@ -753,12 +1059,12 @@ public class ProvisionMojo extends AbstractMojo
     /**
      * Deploy bundles using the new Pax-Runner codebase
      * 
-     * @param mainClass main Pax-Runner class
-     * @param project deployment project
+     * @param entryPoint main Pax-Runner method
+     * @param project deployment POM
      * @param repositories comma separated list of Maven repositories
      * @throws MojoExecutionException
      */
-    private void deployRunnerNG( Class mainClass, MavenProject project, String repositories )
+    private void deployRunnerNG( Method entryPoint, DeploymentPom project, String repositories )
         throws MojoExecutionException
     {
         List deployAppCmds = getDeployCommands(); 
@@ -794,7 +1100,7 @@ public class ProvisionMojo extends AbstractMojo
         deployAppCmds.addAll( Arrays.asList( provision ) );
 
         // main deployment pom with project bundles as dependencies
-        deployAppCmds.add( project.getFile().getAbsolutePath() );
+        deployAppCmds.add( project.m_file.getAbsolutePath() );
 
         if( PomUtils.isNotEmpty( deployURLs ) )
         {
@@ -812,34 +1118,29 @@ public class ProvisionMojo extends AbstractMojo
         deployAppCmds.add( "--overwriteUserBundles" );
 
         getLog().debug( "Starting Pax-Runner " + runner + " with: " + deployAppCmds.toString() );
-        invokePaxRunner( mainClass, (String[]) deployAppCmds.toArray( new String[deployAppCmds.size()] ) );
+        invokePaxRunner( entryPoint, (String[]) deployAppCmds.toArray( new String[deployAppCmds.size()] ) );
     }
 
     /**
-     * Invoke Pax-Runner in-process
+     * Invoke Pax-Runner in-process, using its classloader as the context classloader while it runs
      * 
-     * @param mainClass main Pax-Runner class
+     * @param entryPoint main Pax-Runner method
      * @param commands array of command-line options
      * @throws MojoExecutionException
      */
-    private void invokePaxRunner( Class mainClass, String[] commands )
+    private void invokePaxRunner( Method entryPoint, String[] commands )
         throws MojoExecutionException
     {
-        Class[] paramTypes = new Class[1];
-        paramTypes[0] = String[].class;
-
         Object[] paramValues = new Object[1];
         paramValues[0] = commands;
 
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
         try
         {
-            Method entryPoint = mainClass.getMethod( "main", paramTypes );
+            thread.setContextClassLoader( entryPoint.getDeclaringClass().getClassLoader() );
             entryPoint.invoke( null, paramValues );
         }
-        catch( NoSuchMethodException e )
-        {
-            throw new MojoExecutionException( "Unable to find Pax-Runner entry point" );
-        }
         catch( IllegalAccessException e )
         {
             throw new MojoExecutionException( "Unable to access Pax-Runner entry point" );
@@ -848,6 +1149,10 @@ public class ProvisionMojo extends AbstractMojo
         {
             throw new MojoExecutionException( "Pax-Runner exception", e );
         }
+        finally
+        {
+            thread.setContextClassLoader( contextLoader );
+        }
     }
 
     /**
@@ -863,4 +1168,122 @@ public class ProvisionMojo extends AbstractMojo
         return m_repoFactory.createArtifactRepository( "ops4j.releases", "http://repository.ops4j.org/maven2/",
             m_defaultLayout, noSnapshots, releases );
     }
+
+    /**
+     * Coordinates and location of the deployment POM
+     */
+    private static final class DeploymentPom
+    {
+        /**
+         * Deployment groupId
+         */
+        final String m_groupId;
+
+        /**
+         * Deployment artifactId
+         */
+        final String m_artifactId;
+
+        /**
+         * Deployment version
+         */
+        final String m_version;
+
+        /**
+         * Location of the deployment POM
+         */
+        final File m_file;
+
+        /**
+         * @param groupId deployment groupId
+         * @param artifactId deployment artifactId
+         * @param version deployment version
+         * @param file location of the deployment POM
+         */
+        DeploymentPom( String groupId, String artifactId, String version, File file )
+        {
+            m_groupId = groupId;
+            m_artifactId = artifactId;
+            m_version = version;
+            m_file = file;
+        }
+    }
+
+    /**
+     * Maven coordinates of a bundle to be deployed
+     */
+    private static final class BundleId
+    {
+        /**
+         * Bundle groupId
+         */
+        final String m_groupId;
+
+        /**
+         * Bundle artifactId
+         */
+        final String m_artifactId;
+
+        /**
+         * Bundle version, as selected from the repository metadata
+         */
+        final String m_version;
+
+        /**
+         * Bundle type
+         */
+        final String m_type;
+
+        /**
+         * Local bundle file
+         */
+        final File m_file;
+
+        /**
+         * @param bundle bundle artifact
+         */
+        BundleId( Artifact bundle )
+        {
+            m_groupId = bundle.getGroupId();
+            m_artifactId = bundle.getArtifactId();
+            m_version = PomUtils.getMetaVersion( bundle );
+            m_type = bundle.getType();
+            m_file = bundle.getFile();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean equals( Object obj )
+        {
+            if( this == obj )
+            {
+                return true;
+            }
+            if( !( obj instanceof BundleId ) )
+            {
+                return false;
+            }
+
+            BundleId id = (BundleId) obj;
+            return m_groupId.equals( id.m_groupId ) && m_artifactId.equals( id.m_artifactId )
+                && m_version.equals( id.m_version ) && m_type.equals( id.m_type );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int hashCode()
+        {
+            return toString().hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String toString()
+        {
+            return m_groupId + ':' + m_artifactId + ':' + m_version + ':' + m_type;
+        }
+    }
 }
@@ -19,7 +19,7 @@ package org.ops4j.pax.construct.project;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -28,6 +28,7 @@ import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.AbstractArtifactResolutionException;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.DistributionManagement;
@@ -37,10 +38,15 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.artifact.InvalidDependencyVersionException;
+import org.ops4j.pax.construct.util.DependencyCache;
+import org.ops4j.pax.construct.util.DependencyGraph;
 import org.ops4j.pax.construct.util.DirUtils;
 import org.ops4j.pax.construct.util.ExcludeSystemBundlesFilter;
+import org.ops4j.pax.construct.util.ManifestCache;
+import org.ops4j.pax.construct.util.PomCache;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
+import org.ops4j.pax.construct.util.WorkerPool;
 
 /**
  * Import an OSGi bundle as a project dependency and mark it for deployment
@@ -187,6 +193,13 @@ public class ImportBundleMojo extends AbstractMojo
      */
     private boolean overwrite;
 
+    /**
+     * Number of threads used to resolve candidate projects, zero or less means use all available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
     /**
      * The local provisioning POM, where imported non-local bundles are recorded.
      */
@@ -198,14 +211,9 @@ public class ImportBundleMojo extends AbstractMojo
     private Pom m_localBundlePom;
 
     /**
-     * A list of potential artifacts (groupId:artifactId:version) to be imported
-     */
-    private List m_candidateIds;
-
-    /**
-     * A list of artifacts (groupId:artifactId) that have already been processed.
+     * Potential artifacts (groupId:artifactId:version) to be imported, each artifact is only visited once
      */
-    private Set m_visitedIds;
+    private DependencyGraph m_candidateGraph;
 
     /**
      * {@inheritDoc}
@@ -213,44 +221,118 @@ public class ImportBundleMojo extends AbstractMojo
     public void execute()
         throws MojoExecutionException
     {
-        populateMissingFields();
+        PomCache.bind( this );
 
-        // Find host POMs which will receive the imported dependencies
-        m_provisionPom = DirUtils.findPom( targetDirectory, provisionId );
-        m_localBundlePom = readBundlePom( targetDirectory );
+        try
+        {
+            populateMissingFields();
+
+            // Find host POMs which will receive the imported dependencies
+            m_provisionPom = DirUtils.findPom( targetDirectory, provisionId );
+            m_localBundlePom = readBundlePom( targetDirectory );
+
+            if( null == m_provisionPom && null == m_localBundlePom )
+            {
+                throw new MojoExecutionException( "Cannot execute command."
+                    + " It requires a project with an existing pom.xml, but the build is not using one." );
+            }
 
-        if( null == m_provisionPom && null == m_localBundlePom )
+            String rootId = groupId + ':' + artifactId + ':' + version;
+
+            m_candidateGraph = new DependencyGraph();
+
+            // kickstart the import
+            excludeCandidates( exclusions );
+            m_candidateGraph.schedule( rootId );
+            importBundles( rootId );
+
+            // save any dependency updates
+            writeUpdatedPom( m_localBundlePom );
+            writeUpdatedPom( m_provisionPom );
+        }
+        finally
         {
-            throw new MojoExecutionException( "Cannot execute command."
-                + " It requires a project with an existing pom.xml, but the build is not using one." );
+            PomCache.release( this );
+            ManifestCache.flush();
+            DependencyCache.flush();
         }
+    }
 
-        String rootId = groupId + ':' + artifactId + ':' + version;
+    /**
+     * @param rootId initial import
+     */
+    private void importBundles( String rootId )
+    {
+        if( !importTransitive )
+        {
+            // only the first bundle is wanted, so don't resolve anything beyond it
+            importFirstBundle( rootId );
+            return;
+        }
+
+        WorkerPool pool = new WorkerPool( "pax-import", WorkerPool.getWorkerCount( threads ) );
 
-        m_candidateIds = new ArrayList();
-        m_visitedIds = new HashSet();
+        try
+        {
+            while( m_candidateGraph.hasNext() )
+            {
+                // resolve the current frontier in parallel...
+                List frontier = new ArrayList();
+                for( Iterator i = m_candidateGraph.nextFrontier().iterator(); i.hasNext(); )
+                {
+                    String id = (String) i.next();
+                    ImportCandidate candidate = new ImportCandidate( id, rootId.equals( id ) );
+                    pool.execute( candidate );
+                    frontier.add( candidate );
+                }
 
-        // kickstart the import
-        excludeCandidates( exclusions );
-        scheduleCandidate( rootId );
-        importBundles( rootId );
+                pool.join();
 
-        // save any dependency updates
-        writeUpdatedPom( m_localBundlePom );
-        writeUpdatedPom( m_provisionPom );
+                // ...but import in the same order as a serial breadth-first walk
+                if( !importFrontier( frontier ) )
+                {
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
     }
 
     /**
+     * Resolve candidates one at a time in breadth-first order, stopping at the first bundle
+     * 
      * @param rootId initial import
      */
-    private void importBundles( String rootId )
+    private void importFirstBundle( String rootId )
     {
-        while( !m_candidateIds.isEmpty() )
+        while( m_candidateGraph.hasNext() )
         {
-            String id = (String) m_candidateIds.remove( 0 );
-            String[] fields = id.split( ":" );
+            String id = m_candidateGraph.next();
+
+            ImportCandidate candidate = new ImportCandidate( id, rootId.equals( id ) );
+            candidate.run();
+
+            if( !importFrontier( Collections.singletonList( candidate ) ) )
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param frontier resolved import candidates
+     * @return true if the import should continue, otherwise false
+     */
+    private boolean importFrontier( List frontier )
+    {
+        for( Iterator i = frontier.iterator(); i.hasNext(); )
+        {
+            ImportCandidate candidate = (ImportCandidate) i.next();
 
-            MavenProject p = buildMavenProject( fields[0], fields[1], fields[2] );
+            MavenProject p = candidate.m_project;
             if( null == p )
             {
                 continue;
@@ -261,15 +343,14 @@ public class ImportBundleMojo extends AbstractMojo
                 // support 'dependency' POMs
                 processDependencies( p );
             }
-            else if( rootId.equals( id ) /* user knows best: assume given artifact is a bundle */
-                || PomUtils.isBundleProject( p, m_resolver, m_remoteRepos, m_localRepo, testMetadata ) )
+            else if( candidate.m_isBundle )
             {
                 importBundle( p );
 
                 // stop at first bundle
                 if( !importTransitive )
                 {
-                    break;
+                    return false;
                 }
 
                 processDependencies( p );
@@ -279,6 +360,8 @@ public class ImportBundleMojo extends AbstractMojo
                 getLog().info( "Ignoring non-bundle dependency " + p.getId() );
             }
         }
+
+        return true;
     }
 
     /**
@@ -363,15 +446,31 @@ public class ImportBundleMojo extends AbstractMojo
      * @param pomGroupId project group id
      * @param pomArtifactId project artifact id
      * @param pomVersion project version
+     * @param localPom local project with the same groupId and artifactId, may be null
      * @return resolved Maven project
      */
-    private MavenProject buildMavenProject( String pomGroupId, String pomArtifactId, String pomVersion )
+    private MavenProject buildMavenProject( String pomGroupId, String pomArtifactId, String pomVersion, Pom localPom )
     {
         Artifact pomArtifact = m_factory.createProjectArtifact( pomGroupId, pomArtifactId, pomVersion );
+
+        if( !DependencyCache.isCached( pomArtifact, m_localRepo ) )
+        {
+            try
+            {
+                // download outside of the builder lock, missing POMs are handled by the builder
+                m_resolver.resolve( pomArtifact, m_remoteRepos, m_localRepo );
+            }
+            catch( AbstractArtifactResolutionException e )
+            {
+                getLog().debug( "Unable to download POM " + pomArtifact.getId() );
+            }
+        }
+
         MavenProject project;
         try
         {
-            project = m_projectBuilder.buildFromRepository( pomArtifact, m_remoteRepos, m_localRepo );
+            project = DependencyCache.buildFromRepository( m_projectBuilder, m_factory, pomArtifact, m_remoteRepos,
+                m_localRepo );
         }
         catch( ProjectBuildingException e )
         {
@@ -382,7 +481,6 @@ public class ImportBundleMojo extends AbstractMojo
         /*
          * look to see if this is a local project (if so then set the POM location)
          */
-        Pom localPom = DirUtils.findPom( targetDirectory, pomGroupId + ':' + pomArtifactId );
         if( localPom != null )
         {
             project.setFile( localPom.getFile() );
@@ -441,7 +539,7 @@ public class ImportBundleMojo extends AbstractMojo
                 }
                 else if( Artifact.SCOPE_PROVIDED.equals( scope ) )
                 {
-                    scheduleCandidate( candidateId );
+                    m_candidateGraph.schedule( candidateId );
                 }
                 else
                 {
@@ -455,18 +553,6 @@ public class ImportBundleMojo extends AbstractMojo
         }
     }
 
-    /**
-     * @param candidateId potential new candidate
-     */
-    private void scheduleCandidate( String candidateId )
-    {
-        int versionIndex = candidateId.lastIndexOf( ':' );
-        if( m_visitedIds.add( candidateId.substring( 0, versionIndex ) ) )
-        {
-            m_candidateIds.add( candidateId );
-        }
-    }
-
     /**
      * Support widening of scopes to treat compile and runtime dependencies as provided dependencies
      * 
@@ -543,13 +629,76 @@ public class ImportBundleMojo extends AbstractMojo
             if( fields.length > 1 )
             {
                 // handle groupId:artifactId:other:stuff
-                m_visitedIds.add( fields[0] + ':' + fields[1] );
+                m_candidateGraph.exclude( fields[0], fields[1] );
             }
             else
             {
                 // assume groupId same as artifactId
-                m_visitedIds.add( id + ':' + id );
+                m_candidateGraph.exclude( id, id );
             }
         }
     }
+
+    /**
+     * Import candidate which can be resolved in the background, local projects are found up-front on the main thread
+     * because searching the project tree can update the shared project index
+     */
+    private final class ImportCandidate
+        implements Runnable
+    {
+        /**
+         * Candidate id (groupId:artifactId:version)
+         */
+        private final String m_id;
+
+        /**
+         * True if the user asked for this candidate
+         */
+        private final boolean m_isRoot;
+
+        /**
+         * Local project with the same groupId and artifactId, may be null
+         */
+        private final Pom m_localPom;
+
+        /**
+         * Resolved Maven project, null if it couldn't be resolved
+         */
+        MavenProject m_project;
+
+        /**
+         * True if the resolved project is a bundle
+         */
+        boolean m_isBundle;
+
+        /**
+         * @param id candidate id (groupId:artifactId:version)
+         * @param isRoot true if the user asked for this candidate
+         */
+        ImportCandidate( String id, boolean isRoot )
+        {
+            m_id = id;
+            m_isRoot = isRoot;
+
+            m_localPom = DirUtils.findPom( targetDirectory, DependencyGraph.getKey( id ) );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            String[] fields = m_id.split( ":" );
+
+            MavenProject p = buildMavenProject( fields[0], fields[1], fields[2], m_localPom );
+            if( null != p && !"pom".equals( p.getPackaging() ) )
+            {
+                // user knows best: assume given artifact is a bundle
+                m_isBundle = m_isRoot
+                    || PomUtils.isBundleProject( p, m_resolver, m_remoteRepos, m_localRepo, testMetadata );
+            }
+
+            m_project = p;
+        }
+    }
 }
@@ -0,0 +1,588 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DistributionManagement;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.apache.maven.project.ProjectBuildingException;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Persistent cache of the direct dependencies of projects in the Maven repository, so we don't have to keep building
+ * the same remote projects just to walk their dependencies. Released projects are cached forever, snapshots and stubs
+ * (projects whose POM could not be found) are rebuilt once their entry is older than {@link #SNAPSHOT_TTL}. Mojos
+ * using the cache should call {@link #flush()} when they finish, to save any new entries.
+ */
+public final class DependencyCache
+{
+    /**
+     * How long snapshot and stub entries are trusted, in milliseconds (same as Maven's daily update policy)
+     */
+    public static final long SNAPSHOT_TTL = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Location of the persistent cache, relative to the local Maven repository
+     */
+    private static final String CACHE_PATH = ".cache/pax-construct/dependencies.properties";
+
+    /**
+     * Separates the project id from the field name in the persistent cache
+     */
+    private static final char FIELD_SEPARATOR = '!';
+
+    /**
+     * Number of fields in each encoded dependency, the system path comes last as it may contain colons
+     */
+    private static final int DEPENDENCY_FIELDS = 9;
+
+    /**
+     * Maximum number of entries kept in memory, least recently used entries are dropped first
+     */
+    private static final int MAX_ENTRIES = 4096;
+
+    /**
+     * Map of project id (groupId:artifactId:version) to cached entry
+     */
+    private static final Map ENTRIES = new LinkedHashMap( 256, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry( Map.Entry eldest )
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Current persistent cache, null if the cache is only held in memory
+     */
+    private static File s_cacheFile;
+
+    /**
+     * True when the persistent cache needs saving
+     */
+    private static boolean s_dirty;
+
+    /**
+     * Hide constructor for utility class
+     */
+    private DependencyCache()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * Build a project from the repository, or re-create it from the cache. Projects re-created from the cache only
+     * provide their coordinates, packaging, name, artifact and direct dependencies.
+     *
+     * @param builder Maven project builder, only used by one thread at a time
+     * @param factory Maven artifact factory
+     * @param pomArtifact project artifact
+     * @param remoteRepos sequence of remote repositories
+     * @param localRepo local Maven repository
+     * @return Maven project
+     * @throws ProjectBuildingException
+     */
+    public static MavenProject buildFromRepository( MavenProjectBuilder builder, ArtifactFactory factory,
+        Artifact pomArtifact, List remoteRepos, ArtifactRepository localRepo )
+        throws ProjectBuildingException
+    {
+        String key = getKey( pomArtifact );
+        boolean cacheable = isCacheable( pomArtifact.getVersion() );
+
+        if( cacheable )
+        {
+            Entry entry = getEntry( key, localRepo );
+            if( null != entry )
+            {
+                return entry.toProject( factory );
+            }
+        }
+
+        MavenProject project;
+        synchronized( builder )
+        {
+            project = builder.buildFromRepository( pomArtifact, remoteRepos, localRepo );
+        }
+
+        if( cacheable )
+        {
+            Entry entry = new Entry( project );
+            synchronized( DependencyCache.class )
+            {
+                ENTRIES.put( key, entry );
+                s_dirty = true;
+            }
+        }
+
+        return project;
+    }
+
+    /**
+     * @param pomArtifact project artifact
+     * @param localRepo local Maven repository
+     * @return true if the project can be re-created from the cache without going to the repository, otherwise false
+     */
+    public static boolean isCached( Artifact pomArtifact, ArtifactRepository localRepo )
+    {
+        return isCacheable( pomArtifact.getVersion() ) && null != getEntry( getKey( pomArtifact ), localRepo );
+    }
+
+    /**
+     * @param key project id
+     * @param localRepo local Maven repository
+     * @return current cached entry, null if there is no such entry
+     */
+    private static synchronized Entry getEntry( String key, ArtifactRepository localRepo )
+    {
+        useRepository( localRepo );
+
+        Entry entry = (Entry) ENTRIES.get( key );
+        if( null != entry && entry.isCurrent() )
+        {
+            return entry;
+        }
+
+        return null;
+    }
+
+    /**
+     * @param pomArtifact project artifact
+     * @return project id
+     */
+    private static String getKey( Artifact pomArtifact )
+    {
+        return pomArtifact.getGroupId() + ':' + pomArtifact.getArtifactId() + ':' + pomArtifact.getVersion();
+    }
+
+    /**
+     * @param version project version
+     * @return true if the version refers to one particular project, otherwise false
+     */
+    private static boolean isCacheable( String version )
+    {
+        return PomUtils.isNotEmpty( version ) && !Artifact.RELEASE_VERSION.equals( version )
+            && !Artifact.LATEST_VERSION.equals( version ) && version.indexOf( ',' ) < 0;
+    }
+
+    /**
+     * Load (and later save) cached dependencies from the given local Maven repository
+     *
+     * @param localRepo local Maven repository, may be null
+     */
+    private static void useRepository( ArtifactRepository localRepo )
+    {
+        if( null == localRepo || null == localRepo.getBasedir() )
+        {
+            return;
+        }
+
+        File cacheFile = new File( localRepo.getBasedir(), CACHE_PATH );
+        if( !cacheFile.equals( s_cacheFile ) )
+        {
+            flush();
+
+            s_cacheFile = cacheFile;
+            load();
+        }
+    }
+
+    /**
+     * Save cached dependencies if they have changed since they were loaded. Entries saved by other builds since then
+     * are kept, unless we have a newer entry for the same project.
+     */
+    public static synchronized void flush()
+    {
+        if( !s_dirty || null == s_cacheFile )
+        {
+            return;
+        }
+
+        Properties cache = readCache();
+        if( null == cache )
+        {
+            cache = new Properties();
+        }
+
+        // remove saved fields of projects we're about to replace, as they may have had more dependencies
+        for( Iterator i = cache.keySet().iterator(); i.hasNext(); )
+        {
+            String key = (String) i.next();
+            int separator = key.indexOf( FIELD_SEPARATOR );
+            if( ENTRIES.containsKey( separator < 0 ? key : key.substring( 0, separator ) ) )
+            {
+                i.remove();
+            }
+        }
+
+        for( Iterator i = ENTRIES.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry e = (Map.Entry) i.next();
+            ( (Entry) e.getValue() ).store( (String) e.getKey(), cache );
+        }
+
+        try
+        {
+            DirUtils.storeProperties( cache, s_cacheFile, "Pax-Construct dependency cache" );
+
+            s_dirty = false;
+        }
+        catch( IOException e )
+        {
+            // not fatal, we'll just have to build the projects again next time
+        }
+    }
+
+    /**
+     * @return current contents of the persistent cache, null if it doesn't exist or can't be read
+     */
+    private static Properties readCache()
+    {
+        if( !s_cacheFile.isFile() )
+        {
+            return null;
+        }
+
+        Properties cache = new Properties();
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( s_cacheFile );
+            cache.load( in );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        return cache;
+    }
+
+    /**
+     * Load cached dependencies that are still current, ignoring any problems as the cache can always be rebuilt
+     */
+    private static void load()
+    {
+        Properties cache = readCache();
+        if( null == cache )
+        {
+            return;
+        }
+
+        for( Iterator i = cache.keySet().iterator(); i.hasNext(); )
+        {
+            String key = (String) i.next();
+            if( key.indexOf( FIELD_SEPARATOR ) < 0 && !ENTRIES.containsKey( key ) )
+            {
+                Entry entry = Entry.load( key, cache );
+                if( null != entry && entry.isCurrent() )
+                {
+                    ENTRIES.put( key, entry );
+                }
+            }
+        }
+    }
+
+    /**
+     * Cached project details, along with when they were cached
+     */
+    private static final class Entry
+    {
+        /**
+         * When the project was cached
+         */
+        final long m_timestamp;
+
+        /**
+         * Project coordinates, packaging and name
+         */
+        final Properties m_details;
+
+        /**
+         * Direct dependencies, each one encoded as
+         * groupId:artifactId:version:type:classifier:scope:optional:exclusions:systemPath where exclusions is a comma
+         * separated list of groupId/artifactId
+         */
+        final List m_dependencies;
+
+        /**
+         * @param timestamp when the project was cached
+         * @param details project coordinates, packaging and name
+         * @param dependencies encoded direct dependencies
+         */
+        Entry( long timestamp, Properties details, List dependencies )
+        {
+            m_timestamp = timestamp;
+            m_details = details;
+            m_dependencies = dependencies;
+        }
+
+        /**
+         * @param project Maven project built from the repository
+         */
+        Entry( MavenProject project )
+        {
+            this( System.currentTimeMillis(), new Properties(), new ArrayList() );
+
+            setDetail( "groupId", project.getGroupId() );
+            setDetail( "artifactId", project.getArtifactId() );
+            setDetail( "version", project.getVersion() );
+            setDetail( "packaging", project.getPackaging() );
+            setDetail( "name", project.getName() );
+
+            DistributionManagement dm = project.getDistributionManagement();
+            if( null != dm )
+            {
+                setDetail( "status", dm.getStatus() );
+            }
+
+            for( Iterator i = project.getDependencies().iterator(); i.hasNext(); )
+            {
+                Dependency d = (Dependency) i.next();
+
+                StringBuffer buf = new StringBuffer();
+                buf.append( d.getGroupId() ).append( ':' );
+                buf.append( d.getArtifactId() ).append( ':' );
+                buf.append( encode( d.getVersion() ) ).append( ':' );
+                buf.append( encode( d.getType() ) ).append( ':' );
+                buf.append( encode( d.getClassifier() ) ).append( ':' );
+                buf.append( encode( d.getScope() ) ).append( ':' );
+                buf.append( d.isOptional() ).append( ':' );
+
+                for( Iterator j = d.getExclusions().iterator(); j.hasNext(); )
+                {
+                    Exclusion e = (Exclusion) j.next();
+                    buf.append( e.getGroupId() ).append( '/' ).append( e.getArtifactId() );
+                    if( j.hasNext() )
+                    {
+                        buf.append( ',' );
+                    }
+                }
+
+                buf.append( ':' ).append( encode( d.getSystemPath() ) );
+
+                m_dependencies.add( buf.toString() );
+            }
+        }
+
+        /**
+         * @param name detail name
+         * @param value detail value, may be null
+         */
+        private void setDetail( String name, String value )
+        {
+            if( null != value )
+            {
+                m_details.setProperty( name, value );
+            }
+        }
+
+        /**
+         * @param value optional value
+         * @return encoded value
+         */
+        private static String encode( String value )
+        {
+            return null == value ? "" : value;
+        }
+
+        /**
+         * @param value encoded value
+         * @return optional value
+         */
+        private static String decode( String value )
+        {
+            return value.length() == 0 ? null : value;
+        }
+
+        /**
+         * @return true if the cached details can still be used, otherwise false
+         */
+        boolean isCurrent()
+        {
+            String version = m_details.getProperty( "version" );
+            if( null == version || ArtifactUtils.isSnapshot( version )
+                || "generated".equals( m_details.getProperty( "status" ) ) )
+            {
+                return System.currentTimeMillis() - m_timestamp < SNAPSHOT_TTL;
+            }
+
+            // released projects never change
+            return true;
+        }
+
+        /**
+         * @param factory Maven artifact factory
+         * @return new lightweight Maven project based on the cached details
+         */
+        MavenProject toProject( ArtifactFactory factory )
+        {
+            Model model = new Model();
+
+            model.setGroupId( m_details.getProperty( "groupId" ) );
+            model.setArtifactId( m_details.getProperty( "artifactId" ) );
+            model.setVersion( m_details.getProperty( "version" ) );
+            model.setPackaging( m_details.getProperty( "packaging" ) );
+            model.setName( m_details.getProperty( "name" ) );
+
+            String status = m_details.getProperty( "status" );
+            if( null != status )
+            {
+                DistributionManagement dm = new DistributionManagement();
+                dm.setStatus( status );
+                model.setDistributionManagement( dm );
+            }
+
+            for( Iterator i = m_dependencies.iterator(); i.hasNext(); )
+            {
+                String[] fields = ( (String) i.next() ).split( ":", DEPENDENCY_FIELDS );
+
+                Dependency d = new Dependency();
+                d.setGroupId( fields[0] );
+                d.setArtifactId( fields[1] );
+                d.setVersion( decode( fields[2] ) );
+                d.setType( decode( fields[3] ) );
+                d.setClassifier( decode( fields[4] ) );
+                d.setScope( decode( fields[5] ) );
+                d.setOptional( Boolean.valueOf( fields[6] ).booleanValue() );
+
+                String[] exclusions = fields[7].split( "," );
+                for( int j = 0; j < exclusions.length; j++ )
+                {
+                    int slash = exclusions[j].indexOf( '/' );
+                    if( slash > 0 )
+                    {
+                        Exclusion e = new Exclusion();
+                        e.setGroupId( exclusions[j].substring( 0, slash ) );
+                        e.setArtifactId( exclusions[j].substring( slash + 1 ) );
+                        d.addExclusion( e );
+                    }
+                }
+
+                d.setSystemPath( decode( fields[8] ) );
+
+                model.addDependency( d );
+            }
+
+            MavenProject project = new MavenProject( model );
+            project.setArtifact( factory.createBuildArtifact( model.getGroupId(), model.getArtifactId(), model
+                .getVersion(), model.getPackaging() ) );
+
+            return project;
+        }
+
+        /**
+         * @param key project id
+         * @param cache persistent cache
+         */
+        void store( String key, Properties cache )
+        {
+            cache.setProperty( key, Long.toString( m_timestamp ) );
+            for( Iterator i = m_details.entrySet().iterator(); i.hasNext(); )
+            {
+                Map.Entry e = (Map.Entry) i.next();
+                cache.setProperty( key + FIELD_SEPARATOR + e.getKey(), (String) e.getValue() );
+            }
+            for( int i = 0; i < m_dependencies.size(); i++ )
+            {
+                cache.setProperty( key + FIELD_SEPARATOR + "dependency." + i, (String) m_dependencies.get( i ) );
+            }
+            cache.setProperty( key + FIELD_SEPARATOR + "dependencies", Integer.toString( m_dependencies.size() ) );
+        }
+
+        /**
+         * @param key project id
+         * @param cache persistent cache
+         * @return cached entry, null if the saved details are not valid
+         */
+        static Entry load( String key, Properties cache )
+        {
+            long timestamp;
+            int count;
+            try
+            {
+                timestamp = Long.parseLong( cache.getProperty( key ) );
+                count = Integer.parseInt( cache.getProperty( key + FIELD_SEPARATOR + "dependencies" ) );
+            }
+            catch( NumberFormatException e )
+            {
+                // missing or damaged, or saved by an older release without a dependency count
+                return null;
+            }
+
+            Properties details = new Properties();
+            String[] names =
+            {
+                "groupId", "artifactId", "version", "packaging", "name", "status"
+            };
+            for( int i = 0; i < names.length; i++ )
+            {
+                String value = cache.getProperty( key + FIELD_SEPARATOR + names[i] );
+                if( null != value )
+                {
+                    details.setProperty( names[i], value );
+                }
+            }
+
+            List dependencies = new ArrayList();
+            for( int i = 0; i < count; i++ )
+            {
+                String value = cache.getProperty( key + FIELD_SEPARATOR + "dependency." + i );
+                if( null == value || value.split( ":", DEPENDENCY_FIELDS ).length != DEPENDENCY_FIELDS )
+                {
+                    // incomplete or saved by an older release, so rebuild it
+                    return null;
+                }
+                dependencies.add( value );
+            }
+
+            if( null != cache.getProperty( key + FIELD_SEPARATOR + "dependency." + count ) )
+            {
+                // more dependencies than expected, so the entry can't be trusted
+                return null;
+            }
+
+            return new Entry( timestamp, details, dependencies );
+        }
+    }
+}
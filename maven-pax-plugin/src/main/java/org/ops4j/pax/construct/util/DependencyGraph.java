@@ -0,0 +1,181 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Breadth-first walker over dependency candidates (groupId:artifactId:version[:classifier]) which only visits each
+ * groupId:artifactId once (or each groupId:artifactId:version when keyed on version), remembering the first version
+ * scheduled and the order of the walk.
+ */
+public class DependencyGraph
+{
+    /**
+     * Candidates waiting to be visited
+     */
+    private final LinkedList m_queue;
+
+    /**
+     * True if different versions of the same artifact are visited separately
+     */
+    private final boolean m_keyOnVersion;
+
+    /**
+     * Artifacts (groupId:artifactId[:version]) that have been scheduled
+     */
+    private final Set m_scheduledKeys;
+
+    /**
+     * Maps groupId:artifactId to the first version scheduled
+     */
+    private final Map m_versions;
+
+    /**
+     * Artifacts (groupId:artifactId) that should never be scheduled
+     */
+    private final Set m_excludedKeys;
+
+    /**
+     * Candidates in the order they were scheduled
+     */
+    private final List m_visitOrder;
+
+    /**
+     * Create an empty dependency graph that visits each artifact once, whatever its version
+     */
+    public DependencyGraph()
+    {
+        this( false );
+    }
+
+    /**
+     * Create an empty dependency graph
+     *
+     * @param keyOnVersion true if different versions of the same artifact should be visited separately
+     */
+    public DependencyGraph( boolean keyOnVersion )
+    {
+        m_keyOnVersion = keyOnVersion;
+        m_scheduledKeys = new HashSet();
+        m_queue = new LinkedList();
+        m_versions = new HashMap();
+        m_excludedKeys = new HashSet();
+        m_visitOrder = new ArrayList();
+    }
+
+    /**
+     * @param id groupId:artifactId:version[:classifier]
+     * @return groupId:artifactId
+     */
+    public static String getKey( String id )
+    {
+        String[] fields = id.split( ":" );
+        return fields[0] + ':' + fields[1];
+    }
+
+    /**
+     * Stop the given artifact from being scheduled
+     *
+     * @param groupId artifact group id
+     * @param artifactId artifact id
+     */
+    public void exclude( String groupId, String artifactId )
+    {
+        m_excludedKeys.add( groupId + ':' + artifactId );
+    }
+
+    /**
+     * Schedule a candidate to be visited
+     *
+     * @param id groupId:artifactId:version[:classifier]
+     * @return true if the candidate was scheduled, false if its artifact has already been seen or is excluded
+     */
+    public boolean schedule( String id )
+    {
+        String key = getKey( id );
+        String version = id.split( ":" )[2];
+
+        if( m_excludedKeys.contains( key ) || !m_scheduledKeys.add( m_keyOnVersion ? key + ':' + version : key ) )
+        {
+            return false;
+        }
+
+        if( !m_versions.containsKey( key ) )
+        {
+            m_versions.put( key, version );
+        }
+
+        m_queue.addLast( id );
+        m_visitOrder.add( id );
+
+        return true;
+    }
+
+    /**
+     * @return true if there are candidates waiting to be visited, otherwise false
+     */
+    public boolean hasNext()
+    {
+        return !m_queue.isEmpty();
+    }
+
+    /**
+     * @return next candidate to visit
+     */
+    public String next()
+    {
+        return (String) m_queue.removeFirst();
+    }
+
+    /**
+     * Take all the candidates currently waiting to be visited, leaving room for the next level of the walk
+     *
+     * @return current frontier of the walk
+     */
+    public List nextFrontier()
+    {
+        List frontier = new ArrayList( m_queue );
+        m_queue.clear();
+        return frontier;
+    }
+
+    /**
+     * @param groupId artifact group id
+     * @param artifactId artifact id
+     * @return first version scheduled for this artifact, null if it hasn't been scheduled
+     */
+    public String getVersion( String groupId, String artifactId )
+    {
+        return (String) m_versions.get( groupId + ':' + artifactId );
+    }
+
+    /**
+     * @return read-only list of every candidate scheduled so far, in breadth-first order
+     */
+    public List getVisitOrder()
+    {
+        return Collections.unmodifiableList( m_visitOrder );
+    }
+}
@@ -17,19 +17,29 @@ package org.ops4j.pax.construct.util;
  */
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -42,6 +52,33 @@ import org.ops4j.pax.construct.util.PomUtils.Pom;
  */
 public final class DirUtils
 {
+    /**
+     * Size of the buffer used when unpacking entries
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Minimum number of entries given to each thread when unpacking in parallel
+     */
+    private static final int MIN_ENTRIES_PER_THREAD = 32;
+
+    /**
+     * Records which entries were unpacked by the last incremental unpack, so entries later dropped from the bundle can
+     * be removed
+     */
+    private static final String ENTRIES_FILE = ".pax-entries";
+
+    /**
+     * Per-thread buffer used when unpacking entries, to avoid allocating a new buffer for each entry
+     */
+    private static final ThreadLocal COPY_BUFFER = new ThreadLocal()
+    {
+        protected Object initialValue()
+        {
+            return ByteBuffer.allocateDirect( COPY_BUFFER_SIZE );
+        }
+    };
+
     /**
      * Hide constructor for utility class
      */
@@ -114,6 +151,27 @@ public final class DirUtils
             artifactId = pomId;
         }
 
+        PomIndex index = PomIndex.loadIndex( baseDir );
+        if( null == index )
+        {
+            return null; // no project tree to search
+        }
+
+        List candidates = index.lookup( groupId, artifactId );
+        if( candidates.isEmpty() )
+        {
+            return null;
+        }
+        else if( candidates.size() == 1 )
+        {
+            Pom pom = readIndexedPom( (File) candidates.get( 0 ) );
+            if( null != pom && sameProject( pom, groupId, artifactId ) )
+            {
+                return pom;
+            }
+        }
+
+        // ambiguous or out-of-date match, so fall back to a full search to pick the right one
         for( Iterator i = new PomIterator( baseDir ); i.hasNext(); )
         {
             Pom pom = (Pom) i.next();
@@ -126,6 +184,22 @@ public final class DirUtils
         return null;
     }
 
+    /**
+     * @param pomFile Maven project file taken from the project index
+     * @return the Maven project, null if it could not be read
+     */
+    private static Pom readIndexedPom( File pomFile )
+    {
+        try
+        {
+            return PomUtils.readPomHeader( pomFile );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+    }
+
     /**
      * @param pom Maven project model
      * @param groupId optional project group id
@@ -392,7 +466,7 @@ public final class DirUtils
      * Expand compilatation classpath element to include extra entries for compiling against OSGi bundles
      * 
      * @param element compilatation classpath element
-     * @param tempDir temporary directory for unpacking
+     * @param tempDir unpack cache directory
      * @return expanded classpath elements
      */
     private static List expandBundleClassPath( File element, File tempDir )
@@ -401,9 +475,21 @@ public final class DirUtils
         if( bundle != null && bundle.isFile() )
         {
             String bundleClassPath = extractBundleClassPath( bundle );
-            File unpackDir = new File( tempDir, bundle.getName() );
+            if( ".".equals( bundleClassPath.trim() ) )
+            {
+                // nothing embedded, so no need to unpack
+                return Collections.singletonList( bundle.getPath() );
+            }
 
-            return unpackEmbeddedEntries( bundle, unpackDir, bundleClassPath );
+            try
+            {
+                File unpackDir = UnpackCache.getUnpackDir( tempDir, bundle );
+                return unpackEmbeddedEntries( bundle, unpackDir, bundleClassPath );
+            }
+            catch( IOException e )
+            {
+                return Collections.singletonList( bundle.getPath() );
+            }
         }
 
         return Collections.singletonList( element.getPath() );
@@ -454,12 +540,7 @@ public final class DirUtils
 
         try
         {
-            Manifest manifest = new JarFile( bundle ).getManifest();
-            if( null != manifest )
-            {
-                Attributes mainAttributes = manifest.getMainAttributes();
-                bundleClassPath = mainAttributes.getValue( "Bundle-ClassPath" );
-            }
+            bundleClassPath = ManifestCache.getHeaders( bundle ).getProperty( "Bundle-ClassPath" );
         }
         catch( IOException e )
         {
@@ -493,12 +574,34 @@ public final class DirUtils
      * @return true if bundle was successfully unpacked
      */
     public static boolean unpackBundle( File bundle, File here, EntryFilter filter )
+    {
+        return unpackBundle( bundle, here, filter, false, 0 );
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param here unpack directory
+     * @param filter selection filter
+     * @param incremental when true, keep existing files and skip entries whose size and timestamp already match, while
+     *            removing entries unpacked last time that are no longer in the bundle
+     * @param threads number of threads used to unpack entries, zero or less means use all available processors
+     * @return true if bundle was successfully unpacked
+     */
+    public static boolean unpackBundle( File bundle, File here, EntryFilter filter, boolean incremental, int threads )
     {
         try
         {
-            // improves unpacking performance
-            FileUtils.deleteDirectory( here );
-            unpack( bundle, here, filter );
+            if( !incremental )
+            {
+                // improves unpacking performance
+                FileUtils.deleteDirectory( here );
+            }
+
+            Set names = unpackParallel( bundle, here, filter, incremental, threads );
+            if( incremental )
+            {
+                removeStaleEntries( here, names );
+            }
 
             return true;
         }
@@ -509,20 +612,29 @@ public final class DirUtils
     }
 
     /**
-     * Simple Zip unpacking code, supports selected extraction of entries
+     * Zip unpacking code that creates all the necessary folders up-front and then shares the work of unpacking
+     * entries between several threads
      * 
      * @param bundle zipfile
      * @param here unpack directory
      * @param filter selection filter
+     * @param incremental when true, skip entries whose size and timestamp already match
+     * @param threads number of threads used to unpack entries, zero or less means use all available processors
+     * @return names of all the selected entries, including any that were skipped
      * @throws IOException
      */
-    private static void unpack( File bundle, File here, EntryFilter filter )
+    private static Set unpackParallel( File bundle, File here, EntryFilter filter, boolean incremental, int threads )
         throws IOException
     {
         ZipFile zipFile = new ZipFile( bundle );
 
         try
         {
+            Set names = new HashSet();
+            List entries = new ArrayList();
+            List files = new ArrayList();
+            Set folders = new TreeSet();
+
             for( Enumeration e = zipFile.entries(); e.hasMoreElements(); )
             {
                 ZipEntry entry = (ZipEntry) e.nextElement();
@@ -531,23 +643,243 @@ public final class DirUtils
                 // don't bother with plain folders, as we always create them on-demand
                 if( !entry.isDirectory() && ( null == filter || filter.accept( name ) ) )
                 {
+                    names.add( name );
+
                     // place unpacked file underneath target folder
                     File file = FileUtils.resolveFile( here, name );
-                    file.getParentFile().mkdirs();
-
-                    InputStream in = zipFile.getInputStream( entry );
-                    OutputStream out = new FileOutputStream( file );
-
-                    try
+                    if( incremental && isUnchanged( entry, file ) )
                     {
-                        // unpack contents
-                        IOUtil.copy( in, out );
+                        continue;
                     }
-                    finally
+
+                    entries.add( entry );
+                    files.add( file );
+                    folders.add( file.getParentFile() );
+                }
+            }
+
+            for( Iterator i = folders.iterator(); i.hasNext(); )
+            {
+                ( (File) i.next() ).mkdirs();
+            }
+
+            int count = entries.size();
+            int workers = Math.min( WorkerPool.getWorkerCount( threads ), count / MIN_ENTRIES_PER_THREAD );
+            if( workers <= 1 )
+            {
+                new UnpackTask( zipFile, entries, files ).unpack();
+                return names;
+            }
+
+            WorkerPool pool = new WorkerPool( "pax-unpack", workers );
+            try
+            {
+                // give each worker its own contiguous slice of entries
+                for( int i = 0; i < workers; i++ )
+                {
+                    int from = i * count / workers;
+                    int to = ( i + 1 ) * count / workers;
+
+                    pool.execute( new UnpackTask( zipFile, entries.subList( from, to ), files.subList( from, to ) ) );
+                }
+                pool.join();
+            }
+            catch( RuntimeException e )
+            {
+                if( e.getCause() instanceof IOException )
+                {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+
+            return names;
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Remove files unpacked last time whose entries are no longer selected, then record the current selection
+     * 
+     * @param here unpack directory
+     * @param names names of the selected entries
+     * @throws IOException
+     */
+    private static void removeStaleEntries( File here, Set names )
+        throws IOException
+    {
+        File entriesFile = new File( here, ENTRIES_FILE );
+        Properties previous = new Properties();
+
+        if( entriesFile.isFile() )
+        {
+            InputStream in = new FileInputStream( entriesFile );
+            try
+            {
+                previous.load( in );
+            }
+            finally
+            {
+                IOUtil.close( in );
+            }
+        }
+
+        for( Iterator i = previous.keySet().iterator(); i.hasNext(); )
+        {
+            String name = (String) i.next();
+            if( !names.contains( name ) )
+            {
+                File file = FileUtils.resolveFile( here, name );
+                file.delete();
+
+                // tidy up any folders left empty (delete fails on folders that still have content)
+                File dir = file.getParentFile();
+                while( !here.equals( dir ) && dir.delete() )
+                {
+                    dir = dir.getParentFile();
+                }
+            }
+        }
+
+        Properties current = new Properties();
+        for( Iterator i = names.iterator(); i.hasNext(); )
+        {
+            current.setProperty( (String) i.next(), "true" );
+        }
+
+        here.mkdirs();
+        OutputStream out = new FileOutputStream( entriesFile );
+        try
+        {
+            current.store( out, "Pax-Construct unpacked entries" );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    /**
+     * @param entry zip entry
+     * @param file previously unpacked file
+     * @return true if the file has the same size and timestamp as the entry, otherwise false
+     */
+    private static boolean isUnchanged( ZipEntry entry, File file )
+    {
+        return file.isFile() && file.length() == entry.getSize() && file.lastModified() == entry.getTime();
+    }
+
+    /**
+     * Unpack a selection of entries from the same zipfile
+     */
+    private static final class UnpackTask
+        implements Runnable
+    {
+        /**
+         * Shared zipfile
+         */
+        private final ZipFile m_zipFile;
+
+        /**
+         * Selected entries
+         */
+        private final List m_entries;
+
+        /**
+         * Where to unpack each entry
+         */
+        private final List m_files;
+
+        /**
+         * @param zipFile shared zipfile
+         * @param entries selected entries
+         * @param files where to unpack each entry
+         */
+        UnpackTask( ZipFile zipFile, List entries, List files )
+        {
+            m_zipFile = zipFile;
+            m_entries = entries;
+            m_files = files;
+        }
+
+        /**
+         * Unpack the selected entries, keeping their original timestamps
+         * 
+         * @throws IOException
+         */
+        void unpack()
+            throws IOException
+        {
+            for( int i = 0; i < m_entries.size(); i++ )
+            {
+                ZipEntry entry = (ZipEntry) m_entries.get( i );
+                File file = (File) m_files.get( i );
+
+                copy( m_zipFile.getInputStream( entry ), file );
+                if( entry.getTime() >= 0 )
+                {
+                    file.setLastModified( entry.getTime() );
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            try
+            {
+                unpack();
+            }
+            catch( IOException e )
+            {
+                throw new RuntimeException( e );
+            }
+        }
+    }
+
+    /**
+     * Simple Zip unpacking code, supports selected extraction of entries
+     * 
+     * @param bundle zipfile
+     * @param here unpack directory
+     * @param filter selection filter
+     * @throws IOException
+     */
+    private static void unpack( File bundle, File here, EntryFilter filter )
+        throws IOException
+    {
+        ZipFile zipFile = new ZipFile( bundle );
+        Set folders = new HashSet();
+
+        try
+        {
+            for( Enumeration e = zipFile.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry entry = (ZipEntry) e.nextElement();
+                String name = entry.getName();
+
+                // don't bother with plain folders, as we always create them on-demand
+                if( !entry.isDirectory() && ( null == filter || filter.accept( name ) ) )
+                {
+                    // place unpacked file underneath target folder
+                    File file = FileUtils.resolveFile( here, name );
+                    File folder = file.getParentFile();
+                    if( folders.add( folder ) )
                     {
-                        IOUtil.close( out );
-                        IOUtil.close( in );
+                        folder.mkdirs();
                     }
+
+                    // unpack contents
+                    copy( zipFile.getInputStream( entry ), file );
                 }
             }
         }
@@ -558,30 +890,61 @@ public final class DirUtils
     }
 
     /**
-     * @param bundle jarfile
-     * @param here unpack directory
-     * @param bundleClassPath Bundle-ClassPath attribute
-     * @return list of paths pointing to unpacked entries
+     * Copy stream contents to a file using the current thread's buffer
+     * 
+     * @param in input stream, closed on return
+     * @param file target file
+     * @throws IOException
      */
-    private static List unpackEmbeddedEntries( File bundle, File here, String bundleClassPath )
+    private static void copy( InputStream in, File file )
+        throws IOException
     {
+        ReadableByteChannel source = Channels.newChannel( in );
+        FileOutputStream out = new FileOutputStream( file );
+
         try
         {
-            // improves unpacking performance
-            FileUtils.deleteDirectory( here );
+            FileChannel target = out.getChannel();
+            ByteBuffer buf = (ByteBuffer) COPY_BUFFER.get();
+
+            buf.clear();
+            while( source.read( buf ) >= 0 )
+            {
+                buf.flip();
+                target.write( buf );
+                buf.compact();
+            }
+
+            buf.flip();
+            while( buf.hasRemaining() )
+            {
+                target.write( buf );
+            }
         }
-        catch( IOException e )
+        finally
         {
-            return Collections.singletonList( bundle.getPath() );
+            IOUtil.close( out );
+            IOUtil.close( in );
         }
+    }
 
+    /**
+     * @param bundle jarfile
+     * @param here unpack cache directory for this bundle
+     * @param bundleClassPath Bundle-ClassPath attribute
+     * @return list of paths pointing to unpacked entries
+     */
+    private static List unpackEmbeddedEntries( File bundle, File here, String bundleClassPath )
+    {
         List pathList = new ArrayList();
         String pathPrefix = here.getPath();
 
+        PrefixFilter embedded = new PrefixFilter();
+
         String[] entries = bundleClassPath.split( "," );
         for( int i = 0; i < entries.length; i++ )
         {
-            final String path = entries[i].trim();
+            String path = entries[i].trim();
             if( path.length() == 0 )
             {
                 continue;
@@ -593,27 +956,203 @@ public final class DirUtils
             }
             else
             {
-                try
+                embedded.addPrefix( path );
+                pathList.add( pathPrefix + '/' + path );
+            }
+        }
+
+        if( !embedded.isEmpty() && !UnpackCache.isUnpacked( here ) )
+        {
+            try
+            {
+                // single pass to unpack all the embedded folders/jars into a private directory, then publish it
+                File tempDir = UnpackCache.createTempDir( here );
+                unpack( bundle, tempDir, embedded );
+                UnpackCache.publish( tempDir, here );
+            }
+            catch( IOException e )
+            {
+                // drop anything we couldn't unpack, it will be retried next time
+                for( Iterator i = embedded.getPrefixes().iterator(); i.hasNext(); )
                 {
-                    unpack( bundle, here, new EntryFilter()
-                    {
-                        // just unpack the embedded folder/jar
-                        public boolean accept( String entryName )
-                        {
-                            return entryName.startsWith( path );
-                        }
-                    } );
-
-                    pathList.add( pathPrefix + '/' + path );
+                    pathList.remove( pathPrefix + '/' + i.next() );
                 }
-                catch( IOException e )
+            }
+        }
+
+        return pathList;
+    }
+
+    /**
+     * Accepts entries that start with any of the given prefixes, using a simple trie so each entry name is only
+     * scanned once no matter how many prefixes there are
+     */
+    private static final class PrefixFilter
+        implements EntryFilter
+    {
+        /**
+         * Root of the prefix trie
+         */
+        private final Node m_root = new Node();
+
+        /**
+         * Prefixes added so far
+         */
+        private final List m_prefixes = new ArrayList();
+
+        /**
+         * @param prefix entry prefix to accept
+         */
+        void addPrefix( String prefix )
+        {
+            Node node = m_root;
+            for( int i = 0; i < prefix.length(); i++ )
+            {
+                Character c = new Character( prefix.charAt( i ) );
+                Node child = (Node) node.m_children.get( c );
+                if( null == child )
                 {
-                    continue;
+                    child = new Node();
+                    node.m_children.put( c, child );
                 }
+                node = child;
             }
+
+            node.m_terminal = true;
+            m_prefixes.add( prefix );
         }
 
-        return pathList;
+        /**
+         * @return prefixes added so far
+         */
+        List getPrefixes()
+        {
+            return m_prefixes;
+        }
+
+        /**
+         * @return true if no prefixes have been added, otherwise false
+         */
+        boolean isEmpty()
+        {
+            return m_prefixes.isEmpty();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean accept( String entryName )
+        {
+            Node node = m_root;
+            for( int i = 0; !node.m_terminal && i < entryName.length(); i++ )
+            {
+                node = (Node) node.m_children.get( new Character( entryName.charAt( i ) ) );
+                if( null == node )
+                {
+                    return false;
+                }
+            }
+
+            return node.m_terminal;
+        }
+
+        /**
+         * Single node in the prefix trie
+         */
+        private static final class Node
+        {
+            /**
+             * Map of next character to child node
+             */
+            final Map m_children = new HashMap();
+
+            /**
+             * True if a prefix ends at this node
+             */
+            boolean m_terminal;
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return hex encoded SHA-1 checksum of the file contents
+     * @throws IOException
+     */
+    public static String calculateChecksum( File file )
+        throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-1" );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IOException( "Missing SHA-1 algorithm" );
+        }
+
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buf = new byte[8192];
+            for( int n = in.read( buf ); n > 0; n = in.read( buf ) )
+            {
+                digest.update( buf, 0, n );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        StringBuffer hex = new StringBuffer();
+        byte[] checksum = digest.digest();
+        for( int i = 0; i < checksum.length; i++ )
+        {
+            hex.append( Integer.toHexString( 0x100 | ( checksum[i] & 0xff ) ).substring( 1 ) );
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Save properties by writing them to a temporary file next to the target and then renaming it into place, so other
+     * processes never see a partly written file
+     * 
+     * @param properties properties to save
+     * @param file target file
+     * @param comment header comment
+     * @throws IOException
+     */
+    public static void storeProperties( Properties properties, File file, String comment )
+        throws IOException
+    {
+        File dir = file.getParentFile();
+        dir.mkdirs();
+
+        File tempFile = File.createTempFile( file.getName(), ".tmp", dir );
+        try
+        {
+            OutputStream out = new FileOutputStream( tempFile );
+            try
+            {
+                properties.store( out, comment );
+            }
+            finally
+            {
+                IOUtil.close( out );
+            }
+
+            // rename won't replace an existing file on some platforms
+            if( !tempFile.renameTo( file ) && !( file.delete() && tempFile.renameTo( file ) ) )
+            {
+                throw new IOException( "Unable to rename " + tempFile + " to " + file );
+            }
+        }
+        finally
+        {
+            tempFile.delete();
+        }
     }
 
     /**
@@ -0,0 +1,353 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Persistent cache of the main OSGi manifest headers, keyed by jarfile location and checked against the current file
+ * size and timestamp, so we don't have to keep re-opening the same jars to see if they're bundles. Mojos using the
+ * cache should call {@link #flush()} when they finish, to save any new entries.
+ */
+public final class ManifestCache
+{
+    /**
+     * Manifest headers kept in the cache
+     */
+    public static final String[] HEADERS =
+    {
+        "Bundle-SymbolicName", "Bundle-Name", "Bundle-Version", "Bundle-ClassPath", "Export-Package", "Import-Package"
+    };
+
+    /**
+     * Location of the persistent cache, relative to the local Maven repository
+     */
+    private static final String CACHE_PATH = ".cache/pax-construct/manifests.properties";
+
+    /**
+     * Separates the jarfile location from the header name in the persistent cache
+     */
+    private static final char HEADER_SEPARATOR = '!';
+
+    /**
+     * Maximum number of entries kept in memory, least recently used entries are dropped first
+     */
+    private static final int MAX_ENTRIES = 4096;
+
+    /**
+     * Map of jarfile location to cached entry
+     */
+    private static final Map ENTRIES = new LinkedHashMap( 256, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry( Map.Entry eldest )
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Current persistent cache, null if the cache is only held in memory
+     */
+    private static File s_cacheFile;
+
+    /**
+     * True when the persistent cache needs saving
+     */
+    private static boolean s_dirty;
+
+    /**
+     * Hide constructor for utility class
+     */
+    private ManifestCache()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * Load (and later save) cached headers from the given local Maven repository
+     *
+     * @param localRepo local Maven repository, may be null
+     */
+    public static synchronized void useRepository( ArtifactRepository localRepo )
+    {
+        if( null == localRepo || null == localRepo.getBasedir() )
+        {
+            return;
+        }
+
+        File cacheFile = new File( localRepo.getBasedir(), CACHE_PATH );
+        if( !cacheFile.equals( s_cacheFile ) )
+        {
+            flush();
+
+            s_cacheFile = cacheFile;
+            load();
+        }
+    }
+
+    /**
+     * Find the main OSGi headers for the given jarfile, only opening the jar when it has changed since it was cached
+     *
+     * @param jar jarfile
+     * @return main OSGi headers (empty if the jar has no manifest)
+     * @throws IOException if the jar could not be read
+     */
+    public static Properties getHeaders( File jar )
+        throws IOException
+    {
+        String key = jar.getAbsolutePath();
+
+        synchronized( ManifestCache.class )
+        {
+            Entry entry = (Entry) ENTRIES.get( key );
+            if( null != entry && entry.isCurrent( jar ) )
+            {
+                return (Properties) entry.m_headers.clone();
+            }
+        }
+
+        Entry entry = new Entry( jar, readHeaders( jar ) );
+
+        synchronized( ManifestCache.class )
+        {
+            ENTRIES.put( key, entry );
+            s_dirty = true;
+        }
+
+        return (Properties) entry.m_headers.clone();
+    }
+
+    /**
+     * @param jar jarfile
+     * @return main OSGi headers (empty if the jar has no manifest)
+     * @throws IOException
+     */
+    private static Properties readHeaders( File jar )
+        throws IOException
+    {
+        Properties headers = new Properties();
+
+        JarFile jarFile = new JarFile( jar );
+        try
+        {
+            Manifest manifest = jarFile.getManifest();
+            if( null != manifest )
+            {
+                Attributes mainAttributes = manifest.getMainAttributes();
+                for( int i = 0; i < HEADERS.length; i++ )
+                {
+                    String value = mainAttributes.getValue( HEADERS[i] );
+                    if( null != value )
+                    {
+                        headers.setProperty( HEADERS[i], value );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            jarFile.close();
+        }
+
+        return headers;
+    }
+
+    /**
+     * Save cached headers if they have changed since they were loaded
+     */
+    public static synchronized void flush()
+    {
+        if( !s_dirty || null == s_cacheFile )
+        {
+            return;
+        }
+
+        Properties cache = new Properties();
+        for( Iterator i = ENTRIES.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry e = (Map.Entry) i.next();
+            ( (Entry) e.getValue() ).store( (String) e.getKey(), cache );
+        }
+
+        try
+        {
+            DirUtils.storeProperties( cache, s_cacheFile, "Pax-Construct manifest cache" );
+
+            s_dirty = false;
+        }
+        catch( IOException e )
+        {
+            // not fatal, we'll just have to read the manifests again next time
+        }
+    }
+
+    /**
+     * Load cached headers for jars that still exist, ignoring any problems as the cache can always be rebuilt
+     */
+    private static void load()
+    {
+        if( !s_cacheFile.isFile() )
+        {
+            return;
+        }
+
+        Properties cache = new Properties();
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( s_cacheFile );
+            cache.load( in );
+        }
+        catch( IOException e )
+        {
+            return;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        for( Iterator i = cache.keySet().iterator(); i.hasNext(); )
+        {
+            String key = (String) i.next();
+            if( key.indexOf( HEADER_SEPARATOR ) < 0 && !ENTRIES.containsKey( key ) && new File( key ).isFile() )
+            {
+                Entry entry = Entry.load( key, cache );
+                if( null != entry )
+                {
+                    ENTRIES.put( key, entry );
+                }
+            }
+        }
+    }
+
+    /**
+     * Cached headers, along with the file metadata used to detect changes
+     */
+    private static final class Entry
+    {
+        /**
+         * Size of the jar when it was cached
+         */
+        final long m_length;
+
+        /**
+         * Timestamp of the jar when it was cached
+         */
+        final long m_lastModified;
+
+        /**
+         * Main OSGi headers
+         */
+        final Properties m_headers;
+
+        /**
+         * @param length size of the jar
+         * @param lastModified timestamp of the jar
+         * @param headers main OSGi headers
+         */
+        Entry( long length, long lastModified, Properties headers )
+        {
+            m_length = length;
+            m_lastModified = lastModified;
+            m_headers = headers;
+        }
+
+        /**
+         * @param jar jarfile
+         * @param headers main OSGi headers
+         */
+        Entry( File jar, Properties headers )
+        {
+            this( jar.length(), jar.lastModified(), headers );
+        }
+
+        /**
+         * @param jar jarfile
+         * @return true if the cached headers still match the jar, otherwise false
+         */
+        boolean isCurrent( File jar )
+        {
+            return m_length == jar.length() && m_lastModified == jar.lastModified();
+        }
+
+        /**
+         * @param key jarfile location
+         * @param cache persistent cache
+         */
+        void store( String key, Properties cache )
+        {
+            cache.setProperty( key, m_length + "|" + m_lastModified );
+            for( Iterator i = m_headers.entrySet().iterator(); i.hasNext(); )
+            {
+                Map.Entry e = (Map.Entry) i.next();
+                cache.setProperty( key + HEADER_SEPARATOR + e.getKey(), (String) e.getValue() );
+            }
+        }
+
+        /**
+         * @param key jarfile location
+         * @param cache persistent cache
+         * @return cached entry, null if the saved details are not valid
+         */
+        static Entry load( String key, Properties cache )
+        {
+            String[] fields = cache.getProperty( key ).split( "\\|" );
+            if( fields.length != 2 )
+            {
+                return null;
+            }
+
+            Properties headers = new Properties();
+            for( int i = 0; i < HEADERS.length; i++ )
+            {
+                String value = cache.getProperty( key + HEADER_SEPARATOR + HEADERS[i] );
+                if( null != value )
+                {
+                    headers.setProperty( HEADERS[i], value );
+                }
+            }
+
+            try
+            {
+                return new Entry( Long.parseLong( fields[0] ), Long.parseLong( fields[1] ), headers );
+            }
+            catch( NumberFormatException e )
+            {
+                return null;
+            }
+        }
+    }
+}
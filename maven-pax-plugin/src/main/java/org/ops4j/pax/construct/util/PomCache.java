@@ -0,0 +1,274 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Session cache of parsed Maven POMs, kept inside the plugin context so it survives between goals. Entries are checked
+ * against the current file timestamp and size, and are dropped whenever a POM is written back to disk.
+ */
+public final class PomCache
+{
+    /**
+     * Plugin context key
+     */
+    private static final String CACHE_KEY = "pax.pom.cache";
+
+    /**
+     * Files changed this close to when they were cached can't be trusted, as timestamps may be coarse-grained
+     */
+    private static final long RACY_WINDOW = 2000L;
+
+    /**
+     * Cache bound to the currently executing mojo, null if caching is disabled
+     */
+    private static PomCache s_current;
+
+    /**
+     * Map of canonical POM file to cached entry
+     */
+    private final Map m_entries;
+
+    /**
+     * Number of POMs served from the cache
+     */
+    private int m_hits;
+
+    /**
+     * Number of POMs that had to be parsed
+     */
+    private int m_misses;
+
+    /**
+     * Create an empty cache
+     */
+    private PomCache()
+    {
+        m_entries = new HashMap();
+    }
+
+    /**
+     * Enable caching of parsed POMs for the given mojo, re-using any cache left in the plugin context
+     *
+     * @param mojo currently executing mojo
+     */
+    public static void bind( AbstractMojo mojo )
+    {
+        Map context = mojo.getPluginContext();
+
+        PomCache cache;
+        if( null != context )
+        {
+            cache = (PomCache) context.get( CACHE_KEY );
+            if( null == cache )
+            {
+                cache = new PomCache();
+                context.put( CACHE_KEY, cache );
+            }
+        }
+        else
+        {
+            // no plugin context, so just cache for this execution
+            cache = new PomCache();
+        }
+
+        setCurrent( cache );
+    }
+
+    /**
+     * Disable caching of parsed POMs, the cache itself stays in the plugin context for the next goal
+     *
+     * @param mojo currently executing mojo
+     */
+    public static void release( AbstractMojo mojo )
+    {
+        PomCache cache = getCurrent();
+        if( null != cache )
+        {
+            mojo.getLog().debug( "POM cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses" );
+        }
+
+        setCurrent( null );
+    }
+
+    /**
+     * @param cache cache to use, null to disable caching
+     */
+    private static synchronized void setCurrent( PomCache cache )
+    {
+        s_current = cache;
+    }
+
+    /**
+     * @return the current cache, null if caching is disabled
+     */
+    private static synchronized PomCache getCurrent()
+    {
+        return s_current;
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     * @return private copy of the parsed XML, null if it isn't cached or is out of date
+     */
+    static Xpp3Dom lookup( File pomFile )
+    {
+        PomCache cache = getCurrent();
+        if( null == cache )
+        {
+            return null;
+        }
+
+        return cache.get( pomFile );
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     * @param pom freshly parsed XML
+     */
+    static void store( File pomFile, Xpp3Dom pom )
+    {
+        PomCache cache = getCurrent();
+        if( null != cache )
+        {
+            cache.put( pomFile, pom );
+        }
+    }
+
+    /**
+     * @param pomFile canonical POM file that has changed
+     */
+    static void invalidate( File pomFile )
+    {
+        PomCache cache = getCurrent();
+        if( null != cache )
+        {
+            cache.remove( pomFile );
+        }
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     * @return private copy of the parsed XML, null if it isn't cached or is out of date
+     */
+    private synchronized Xpp3Dom get( File pomFile )
+    {
+        Entry entry = (Entry) m_entries.get( pomFile );
+        if( null != entry && entry.isCurrent( pomFile ) )
+        {
+            m_hits++;
+
+            // callers are free to edit their copy
+            return new Xpp3Dom( entry.m_pom );
+        }
+
+        m_misses++;
+
+        return null;
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     * @param pom freshly parsed XML
+     */
+    private synchronized void put( File pomFile, Xpp3Dom pom )
+    {
+        m_entries.put( pomFile, new Entry( pomFile, new Xpp3Dom( pom ) ) );
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     */
+    private synchronized void remove( File pomFile )
+    {
+        m_entries.remove( pomFile );
+    }
+
+    /**
+     * @return number of POMs served from the cache
+     */
+    private synchronized int getHits()
+    {
+        return m_hits;
+    }
+
+    /**
+     * @return number of POMs that had to be parsed
+     */
+    private synchronized int getMisses()
+    {
+        return m_misses;
+    }
+
+    /**
+     * Parsed POM, along with the file metadata used to detect changes
+     */
+    private static final class Entry
+    {
+        /**
+         * Timestamp of the POM when it was parsed
+         */
+        final long m_lastModified;
+
+        /**
+         * Size of the POM when it was parsed
+         */
+        final long m_length;
+
+        /**
+         * When the POM was added to the cache
+         */
+        final long m_cachedAt;
+
+        /**
+         * Parsed XML, never handed out directly
+         */
+        final Xpp3Dom m_pom;
+
+        /**
+         * @param pomFile canonical POM file
+         * @param pom parsed XML
+         */
+        Entry( File pomFile, Xpp3Dom pom )
+        {
+            m_lastModified = pomFile.lastModified();
+            m_length = pomFile.length();
+            m_cachedAt = System.currentTimeMillis();
+            m_pom = pom;
+        }
+
+        /**
+         * @param pomFile canonical POM file
+         * @return true if the cached XML still matches the file, otherwise false
+         */
+        boolean isCurrent( File pomFile )
+        {
+            if( m_cachedAt - m_lastModified < RACY_WINDOW )
+            {
+                return false; // file may have changed again without updating the timestamp
+            }
+
+            return m_lastModified == pomFile.lastModified() && m_length == pomFile.length();
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.ops4j.pax.construct.util.PomUtils.Pom;
+
+/**
+ * Persistent index of all POMs in a Maven project tree, keyed by groupId:artifactId and Bundle-SymbolicName. The
+ * index lives underneath the top-most project and is refreshed incrementally, so only POMs that have changed since
+ * the last search are parsed again.
+ */
+public class PomIndex
+{
+    /**
+     * Location of the index, relative to the top-most project
+     */
+    private static final String INDEX_PATH = "target/pax-pom-index.properties";
+
+    /**
+     * Top-most project directory
+     */
+    private final File m_rootDir;
+
+    /**
+     * Persistent index file
+     */
+    private final File m_indexFile;
+
+    /**
+     * Map of project directory to indexed details
+     */
+    private Map m_entries;
+
+    /**
+     * Map of search key to matching project directories
+     */
+    private Map m_lookup;
+
+    /**
+     * True when the index needs saving
+     */
+    private boolean m_dirty;
+
+    /**
+     * @param rootDir top-most project directory
+     */
+    private PomIndex( File rootDir )
+    {
+        m_rootDir = rootDir;
+        m_indexFile = new File( rootDir, INDEX_PATH );
+        m_entries = new HashMap();
+    }
+
+    /**
+     * Load the index for the project tree containing the given directory, refreshing any stale entries
+     *
+     * @param here a directory somewhere in the project tree
+     * @return up-to-date index, null if there is no project at the given location
+     */
+    public static PomIndex loadIndex( File here )
+    {
+        Pom pom;
+        try
+        {
+            pom = PomUtils.readPomHeader( here );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+
+        // same backtracking rules as the iterator, so we cover the same search space
+        for( Pom parent = pom.getContainingPom(); null != parent; parent = parent.getContainingPom() )
+        {
+            pom = parent;
+        }
+
+        PomIndex index = new PomIndex( pom.getBasedir() );
+
+        index.load();
+        index.refresh();
+        index.save();
+
+        return index;
+    }
+
+    /**
+     * @return top-most project directory
+     */
+    public File getRootDir()
+    {
+        return m_rootDir;
+    }
+
+    /**
+     * Find all indexed POMs matching the given ids
+     *
+     * @param groupId optional project group id
+     * @param artifactId project artifact id or bundle symbolic name
+     * @return list of matching POM files, empty if there are no matches
+     */
+    public List lookup( String groupId, String artifactId )
+    {
+        List matches = (List) m_lookup.get( searchKey( groupId, artifactId ) );
+        if( null == matches )
+        {
+            return Collections.EMPTY_LIST;
+        }
+
+        List pomFiles = new ArrayList();
+        for( Iterator i = matches.iterator(); i.hasNext(); )
+        {
+            pomFiles.add( new File( (String) i.next(), "pom.xml" ) );
+        }
+
+        return pomFiles;
+    }
+
+    /**
+     * Walk the module graph from the top-most project, only parsing POMs that are new or have changed on disk
+     */
+    private void refresh()
+    {
+        Set reachable = new HashSet();
+
+        LinkedList candidates = new LinkedList();
+        candidates.add( m_rootDir );
+
+        while( !candidates.isEmpty() )
+        {
+            File baseDir = DirUtils.resolveFile( (File) candidates.removeFirst(), true );
+            String key = baseDir.getPath();
+            if( !reachable.add( key ) )
+            {
+                continue;
+            }
+
+            File pomFile = new File( baseDir, "pom.xml" );
+            Entry entry = (Entry) m_entries.get( key );
+            if( null == entry || entry.isStale( pomFile ) )
+            {
+                entry = parseEntry( pomFile );
+                if( null == entry )
+                {
+                    continue;
+                }
+
+                m_entries.put( key, entry );
+                m_dirty = true;
+            }
+
+            for( Iterator i = entry.m_modules.iterator(); i.hasNext(); )
+            {
+                candidates.add( new File( baseDir, (String) i.next() ) );
+            }
+        }
+
+        // forget about any projects that are no longer part of the tree
+        if( m_entries.keySet().retainAll( reachable ) )
+        {
+            m_dirty = true;
+        }
+
+        buildLookup();
+    }
+
+    /**
+     * @param pomFile Maven project file
+     * @return fresh index entry, null if the project could not be read
+     */
+    private static Entry parseEntry( File pomFile )
+    {
+        if( !pomFile.isFile() )
+        {
+            return null;
+        }
+
+        try
+        {
+            Pom pom = PomUtils.readPomHeader( pomFile );
+
+            Entry entry = new Entry();
+
+            entry.m_lastModified = pomFile.lastModified();
+            entry.m_length = pomFile.length();
+            entry.m_groupId = pom.getGroupId();
+            entry.m_artifactId = pom.getArtifactId();
+            entry.m_symbolicName = pom.getBundleSymbolicName();
+            entry.m_modules = pom.getModuleNames();
+
+            return entry;
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Rebuild the search map, indexing each project by artifactId and symbolic name, with and without its groupId
+     */
+    private void buildLookup()
+    {
+        m_lookup = new HashMap();
+
+        for( Iterator i = m_entries.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry e = (Map.Entry) i.next();
+
+            String baseDir = (String) e.getKey();
+            Entry entry = (Entry) e.getValue();
+
+            addLookup( searchKey( null, entry.m_artifactId ), baseDir );
+            addLookup( searchKey( entry.m_groupId, entry.m_artifactId ), baseDir );
+
+            if( null != entry.m_symbolicName )
+            {
+                addLookup( searchKey( null, entry.m_symbolicName ), baseDir );
+                addLookup( searchKey( entry.m_groupId, entry.m_symbolicName ), baseDir );
+            }
+        }
+    }
+
+    /**
+     * @param key search key
+     * @param baseDir matching project directory
+     */
+    private void addLookup( String key, String baseDir )
+    {
+        List matches = (List) m_lookup.get( key );
+        if( null == matches )
+        {
+            matches = new ArrayList();
+            m_lookup.put( key, matches );
+        }
+        if( !matches.contains( baseDir ) )
+        {
+            matches.add( baseDir );
+        }
+    }
+
+    /**
+     * @param groupId optional project group id
+     * @param artifactId project artifact id or bundle symbolic name
+     * @return search key
+     */
+    private static String searchKey( String groupId, String artifactId )
+    {
+        if( null == groupId )
+        {
+            return ":" + artifactId;
+        }
+        return groupId + ':' + artifactId;
+    }
+
+    /**
+     * Load previously saved index entries, ignoring any problems as the index can always be rebuilt
+     */
+    private void load()
+    {
+        if( !m_indexFile.isFile() )
+        {
+            return;
+        }
+
+        Properties index = new Properties();
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( m_indexFile );
+            index.load( in );
+        }
+        catch( IOException e )
+        {
+            return;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        for( Iterator i = index.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry e = (Map.Entry) i.next();
+
+            Entry entry = Entry.parse( (String) e.getValue() );
+            if( null != entry )
+            {
+                m_entries.put( e.getKey(), entry );
+            }
+        }
+    }
+
+    /**
+     * Save index entries if they have changed since they were loaded
+     */
+    private void save()
+    {
+        if( !m_dirty )
+        {
+            return;
+        }
+
+        Properties index = new Properties();
+        for( Iterator i = m_entries.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry e = (Map.Entry) i.next();
+            index.setProperty( (String) e.getKey(), e.getValue().toString() );
+        }
+
+        OutputStream out = null;
+        try
+        {
+            m_indexFile.getParentFile().mkdirs();
+            out = new FileOutputStream( m_indexFile );
+            index.store( out, "Pax-Construct project index" );
+
+            m_dirty = false;
+        }
+        catch( IOException e )
+        {
+            // not fatal, next search will just have to rebuild the index
+            m_indexFile.delete();
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    /**
+     * Indexed project details, along with the file metadata used to detect changes
+     */
+    private static final class Entry
+    {
+        /**
+         * Field separator used when saving entries
+         */
+        private static final String SEPARATOR = "|";
+
+        /**
+         * Timestamp of the POM when it was indexed
+         */
+        long m_lastModified;
+
+        /**
+         * Size of the POM when it was indexed
+         */
+        long m_length;
+
+        /**
+         * Project group id
+         */
+        String m_groupId;
+
+        /**
+         * Project artifact id
+         */
+        String m_artifactId;
+
+        /**
+         * Project symbolic name, may be null
+         */
+        String m_symbolicName;
+
+        /**
+         * Names of modules contained in this project
+         */
+        List m_modules;
+
+        /**
+         * @param pomFile Maven project file
+         * @return true if the file has changed since it was indexed, otherwise false
+         */
+        boolean isStale( File pomFile )
+        {
+            return m_lastModified != pomFile.lastModified() || m_length != pomFile.length();
+        }
+
+        /**
+         * @param text saved index entry
+         * @return index entry, null if the text is not a valid entry
+         */
+        static Entry parse( String text )
+        {
+            String[] fields = text.split( "\\|", -1 );
+            if( fields.length != 6 )
+            {
+                return null;
+            }
+
+            Entry entry = new Entry();
+
+            try
+            {
+                entry.m_lastModified = Long.parseLong( fields[0] );
+                entry.m_length = Long.parseLong( fields[1] );
+            }
+            catch( NumberFormatException e )
+            {
+                return null;
+            }
+
+            entry.m_groupId = nullIfEmpty( fields[2] );
+            entry.m_artifactId = fields[3];
+            entry.m_symbolicName = nullIfEmpty( fields[4] );
+
+            entry.m_modules = new ArrayList();
+            String[] modules = fields[5].split( "," );
+            for( int i = 0; i < modules.length; i++ )
+            {
+                if( modules[i].length() > 0 )
+                {
+                    entry.m_modules.add( modules[i] );
+                }
+            }
+
+            return entry;
+        }
+
+        /**
+         * @param value field value
+         * @return null if the value is empty, otherwise the value
+         */
+        private static String nullIfEmpty( String value )
+        {
+            return value.length() > 0 ? value : null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String toString()
+        {
+            StringBuffer buf = new StringBuffer();
+
+            buf.append( m_lastModified ).append( SEPARATOR );
+            buf.append( m_length ).append( SEPARATOR );
+            buf.append( null == m_groupId ? "" : m_groupId ).append( SEPARATOR );
+            buf.append( m_artifactId ).append( SEPARATOR );
+            buf.append( null == m_symbolicName ? "" : m_symbolicName ).append( SEPARATOR );
+
+            for( Iterator i = m_modules.iterator(); i.hasNext(); )
+            {
+                buf.append( i.next() );
+                if( i.hasNext() )
+                {
+                    buf.append( ',' );
+                }
+            }
+
+            return buf.toString();
+        }
+    }
+}
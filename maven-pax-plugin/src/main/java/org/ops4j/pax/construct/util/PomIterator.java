@@ -18,6 +18,7 @@ package org.ops4j.pax.construct.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -27,6 +28,9 @@ import org.ops4j.pax.construct.util.PomUtils.Pom;
 
 /**
  * Iterate over all POMs in a Maven project tree using depth-first and backtracking search (non-recursive)
+ * 
+ * Use {@link #visitAll(File, boolean, Visitor, int)} when the order of visits doesn't matter, as it parses sibling
+ * modules concurrently
  */
 public class PomIterator
     implements Iterator
@@ -70,7 +74,7 @@ public class PomIterator
 
         try
         {
-            m_pom = PomUtils.readPom( here );
+            m_pom = PomUtils.readPomHeader( here );
         }
         catch( IOException e )
         {
@@ -147,6 +151,133 @@ public class PomIterator
         return m_pom.getContainingPom();
     }
 
+    /**
+     * Callback used when visiting POMs in parallel, may be called concurrently from different threads
+     */
+    public interface Visitor
+    {
+        /**
+         * @param pom a Maven POM in the project tree
+         */
+        void visit( Pom pom );
+    }
+
+    /**
+     * Visit all POMs in a Maven project tree, parsing sibling modules concurrently. Each POM is visited exactly once,
+     * but in no particular order - use the iterator when the order of visits matters.
+     * 
+     * @param here a directory somewhere in the project tree
+     * @param localSearch when true, only search downwards
+     * @param visitor callback to apply to each POM
+     * @param threads number of worker threads, zero or less means use all available processors
+     */
+    public static void visitAll( File here, boolean localSearch, Visitor visitor, int threads )
+    {
+        Pom pom;
+        try
+        {
+            pom = PomUtils.readPomHeader( here );
+        }
+        catch( IOException e )
+        {
+            return;
+        }
+
+        if( !localSearch )
+        {
+            // same search space as the iterator: start from the top-most containing POM
+            for( Pom parent = pom.getContainingPom(); null != parent; parent = parent.getContainingPom() )
+            {
+                pom = parent;
+            }
+        }
+
+        WorkerPool pool = new WorkerPool( "pom-visitor", WorkerPool.getWorkerCount( threads ) );
+        Set visited = Collections.synchronizedSet( new HashSet() );
+
+        try
+        {
+            pool.execute( new VisitTask( pool, visited, visitor, pom ) );
+            pool.join();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Visit a single POM and then schedule visits to its modules
+     */
+    private static final class VisitTask
+        implements Runnable
+    {
+        /**
+         * Pool of worker threads
+         */
+        private final WorkerPool m_pool;
+
+        /**
+         * Canonical locations of all the POMs seen so far
+         */
+        private final Set m_visited;
+
+        /**
+         * Callback to apply to each POM
+         */
+        private final Visitor m_visitor;
+
+        /**
+         * The POM to visit
+         */
+        private final Pom m_pom;
+
+        /**
+         * @param pool pool of worker threads
+         * @param visited canonical locations of all the POMs seen so far
+         * @param visitor callback to apply to each POM
+         * @param pom the POM to visit
+         */
+        VisitTask( WorkerPool pool, Set visited, Visitor visitor, Pom pom )
+        {
+            m_pool = pool;
+            m_visited = visited;
+            m_visitor = visitor;
+            m_pom = pom;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            if( !m_visited.add( m_pom.getFile() ) )
+            {
+                return;
+            }
+
+            m_visitor.visit( m_pom );
+
+            for( Iterator i = m_pom.getModuleNames().iterator(); i.hasNext(); )
+            {
+                final String module = (String) i.next();
+
+                // parse each module on its own worker
+                m_pool.execute( new Runnable()
+                {
+                    public void run()
+                    {
+                        Pom subPom = m_pom.getModulePom( module );
+                        if( null != subPom )
+                        {
+                            new VisitTask( m_pool, m_visited, m_visitor, subPom ).run();
+                        }
+                    }
+                } );
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -22,9 +22,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.ArtifactUtils;
@@ -318,6 +315,31 @@ public final class PomUtils
         return new XppPom( candidate );
     }
 
+    /**
+     * Factory method that provides a lightweight view of an existing Maven project file, which only reads the project
+     * header (ids, parent, packaging, modules and properties) and upgrades itself to a full editor when changed
+     * 
+     * @param here a Maven POM, or a directory containing a file named 'pom.xml'
+     * @return simple Maven project editor
+     * @throws IOException
+     */
+    public static Pom readPomHeader( File here )
+        throws IOException
+    {
+        File candidate = here;
+
+        if( null == here )
+        {
+            throw new IOException( "null location" );
+        }
+        else if( here.isDirectory() )
+        {
+            candidate = new File( here, "pom.xml" );
+        }
+
+        return new StreamingPom( candidate );
+    }
+
     /**
      * Factory method that provides an editor for a new Maven project file
      * 
@@ -401,7 +423,8 @@ public final class PomUtils
 
         try
         {
-            return isBundleArtifact( new JarFile( artifact.getFile() ).getManifest() );
+            ManifestCache.useRepository( localRepo );
+            return isBundleArtifact( ManifestCache.getHeaders( artifact.getFile() ) );
         }
         catch( IOException e )
         {
@@ -410,20 +433,12 @@ public final class PomUtils
     }
 
     /**
-     * @param manifest jar manifest, possibly null
+     * @param headers main manifest headers
      * @return true if this is an OSGi bundle artifact, otherwise false
      */
-    private static boolean isBundleArtifact( Manifest manifest )
+    private static boolean isBundleArtifact( Properties headers )
     {
-        if( null == manifest )
-        {
-            return false;
-        }
-
-        Attributes mainAttributes = manifest.getMainAttributes();
-
-        return mainAttributes.getValue( "Bundle-SymbolicName" ) != null
-            || mainAttributes.getValue( "Bundle-Name" ) != null;
+        return headers.getProperty( "Bundle-SymbolicName" ) != null || headers.getProperty( "Bundle-Name" ) != null;
     }
 
     /**
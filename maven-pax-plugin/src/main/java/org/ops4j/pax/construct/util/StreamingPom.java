@@ -0,0 +1,687 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Repository;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.ops4j.pax.construct.util.PomUtils.ExistingElementException;
+import org.ops4j.pax.construct.util.PomUtils.Pom;
+
+/**
+ * Lightweight read-only view of a Maven POM that streams the document once, only keeping the project header (ids,
+ * parent, packaging, modules and properties) instead of building the complete round-trip document. The first edit
+ * upgrades it to a full {@link XppPom}, which then handles all further requests.
+ */
+public class StreamingPom
+    implements Pom
+{
+    /**
+     * Underlying XML file
+     */
+    private final File m_file;
+
+    /**
+     * Simple header values, such as groupId and packaging
+     */
+    private final Map m_values;
+
+    /**
+     * Parent project values
+     */
+    private final Map m_parent;
+
+    /**
+     * Names of modules contained in this project
+     */
+    private final List m_modules;
+
+    /**
+     * Properties defined by this project
+     */
+    private final Properties m_properties;
+
+    /**
+     * Header sections defined by this project
+     */
+    private final Set m_seen;
+
+    /**
+     * Full round-trip model, created on demand
+     */
+    private XppPom m_fullPom;
+
+    /**
+     * Stream the project header from an existing file
+     *
+     * @param pomFile XML file containing Maven project model
+     * @throws IOException
+     */
+    public StreamingPom( File pomFile )
+        throws IOException
+    {
+        // protect against changes in working directory
+        m_file = DirUtils.resolveFile( pomFile, true );
+
+        m_values = new HashMap();
+        m_parent = new HashMap();
+        m_modules = new ArrayList();
+        m_properties = new Properties();
+        m_seen = new HashSet();
+
+        scan();
+
+        // record inherited values now, so later requests never need to look at the document again
+        inheritValue( "groupId" );
+        inheritValue( "version" );
+    }
+
+    /**
+     * Stream header elements from the XML file, skipping over the body sections without building them
+     *
+     * @throws IOException
+     */
+    private void scan()
+        throws IOException
+    {
+        Reader reader = StreamFactory.newXmlReader( m_file );
+
+        try
+        {
+            XmlPullParser parser = new MXParser();
+            parser.setInput( reader );
+
+            // move to the project element
+            if( parser.nextTag() != XmlPullParser.START_TAG )
+            {
+                throw new IOException( "Missing project element in " + m_file );
+            }
+
+            while( parser.nextTag() == XmlPullParser.START_TAG )
+            {
+                String name = parser.getName();
+                if( readSection( parser, name ) )
+                {
+                    m_seen.add( name );
+                }
+            }
+        }
+        catch( XmlPullParserException e )
+        {
+            throw new IOException( e.getLocalizedMessage() );
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+    }
+
+    /**
+     * @param name either groupId or version
+     */
+    private void inheritValue( String name )
+    {
+        if( !m_values.containsKey( name ) && m_parent.containsKey( name ) )
+        {
+            m_values.put( name, m_parent.get( name ) );
+        }
+    }
+
+    /**
+     * @param parser XML parser positioned at the start of a top-level section
+     * @param name section name
+     * @return true if this is a header section, false if it was skipped
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private boolean readSection( XmlPullParser parser, String name )
+        throws XmlPullParserException,
+        IOException
+    {
+        if( "parent".equals( name ) )
+        {
+            readMap( parser, m_parent );
+        }
+        else if( "modules".equals( name ) )
+        {
+            while( parser.nextTag() == XmlPullParser.START_TAG )
+            {
+                String value = readText( parser );
+                if( null != value )
+                {
+                    m_modules.add( value );
+                }
+            }
+        }
+        else if( "properties".equals( name ) )
+        {
+            readMap( parser, m_properties );
+        }
+        else if( "groupId".equals( name ) || "artifactId".equals( name ) || "version".equals( name )
+            || "packaging".equals( name ) )
+        {
+            String value = readText( parser );
+            if( null != value )
+            {
+                m_values.put( name, value );
+            }
+        }
+        else
+        {
+            skipElement( parser );
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param parser XML parser positioned at the start of a map-style section
+     * @param map map to fill with element names and text
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private static void readMap( XmlPullParser parser, Map map )
+        throws XmlPullParserException,
+        IOException
+    {
+        while( parser.nextTag() == XmlPullParser.START_TAG )
+        {
+            String key = parser.getName();
+            String value = readText( parser );
+            if( null != value )
+            {
+                map.put( key, value );
+            }
+        }
+    }
+
+    /**
+     * @param parser XML parser positioned at the start of an element
+     * @return text content of the element, ignoring any nested elements, null if there is no text
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private static String readText( XmlPullParser parser )
+        throws XmlPullParserException,
+        IOException
+    {
+        StringBuffer text = null;
+        for( int depth = 1; depth > 0; )
+        {
+            int event = parser.next();
+            if( XmlPullParser.START_TAG == event )
+            {
+                depth++;
+            }
+            else if( XmlPullParser.END_TAG == event )
+            {
+                depth--;
+            }
+            else if( XmlPullParser.TEXT == event && 1 == depth )
+            {
+                if( null == text )
+                {
+                    text = new StringBuffer();
+                }
+                text.append( parser.getText() );
+            }
+        }
+
+        return null == text ? null : text.toString();
+    }
+
+    /**
+     * @param parser XML parser positioned at the start of an element
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private static void skipElement( XmlPullParser parser )
+        throws XmlPullParserException,
+        IOException
+    {
+        for( int depth = 1; depth > 0; )
+        {
+            int event = parser.next();
+            if( XmlPullParser.START_TAG == event )
+            {
+                depth++;
+            }
+            else if( XmlPullParser.END_TAG == event )
+            {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Upgrade to the full round-trip model, needed before making any edits
+     *
+     * @return the full Maven POM
+     */
+    synchronized XppPom getFullPom()
+    {
+        if( null == m_fullPom )
+        {
+            try
+            {
+                m_fullPom = new XppPom( m_file );
+            }
+            catch( IOException e )
+            {
+                throw new RuntimeException( "Unable to read Maven POM " + m_file, e );
+            }
+        }
+        return m_fullPom;
+    }
+
+    /**
+     * @return the full Maven POM if this has been upgraded, otherwise null
+     */
+    private synchronized XppPom getUpgradedPom()
+    {
+        return m_fullPom;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getId()
+    {
+        // follow the Maven standard...
+        return getGroupId() + ':' + getArtifactId() + ':' + getPackaging() + ':' + getVersion();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getParentId()
+    {
+        XppPom fullPom = getUpgradedPom();
+        if( null != fullPom )
+        {
+            return fullPom.getParentId();
+        }
+
+        if( !m_seen.contains( "parent" ) )
+        {
+            return null;
+        }
+
+        // assume that the parent has pom packaging (seems reasonable assumption)
+        return m_parent.get( "groupId" ) + ":" + m_parent.get( "artifactId" ) + ":pom:" + m_parent.get( "version" );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getGroupId()
+    {
+        XppPom fullPom = getUpgradedPom();
+        if( null != fullPom )
+        {
+            return fullPom.getGroupId();
+        }
+
+        return (String) m_values.get( "groupId" );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getArtifactId()
+    {
+        XppPom fullPom = getUpgradedPom();
+        if( null != fullPom )
+        {
+            return fullPom.getArtifactId();
+        }
+
+        return (String) m_values.get( "artifactId" );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getVersion()
+    {
+        XppPom fullPom = getUpgradedPom();
+        if( null != fullPom )
+        {
+            return fullPom.getVersion();
+        }
+
+        return (String) m_values.get( "version" );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getPackaging()
+    {
+        XppPom fullPom = getUpgradedPom();
+        if( null != fullPom )
+        {
+            return fullPom.getPackaging();
+        }
+
+        if( !m_seen.contains( "packaging" ) )
+        {
+            return "jar";
+        }
+        return (String) m_values.get( "packaging" );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List getModuleNames()
+    {
+        XppPom fullPom = getUpgradedPom();
+        if( null != fullPom )
+        {
+            return fullPom.getModuleNames();
+        }
+
+        if( m_seen.contains( "modules" ) )
+        {
+            return new ArrayList( m_modules );
+        }
+
+        return Collections.EMPTY_LIST;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Pom getContainingPom()
+    {
+        try
+        {
+            File baseDir = getBasedir();
+
+            // check it really does contain our current project
+            Pom pom = PomUtils.readPomHeader( baseDir.getParentFile() );
+            if( pom.getModuleNames().contains( baseDir.getName() ) )
+            {
+                return pom;
+            }
+            return null;
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Pom getModulePom( String name )
+    {
+        try
+        {
+            // check it really is a valid module
+            if( getModuleNames().contains( name ) )
+            {
+                return PomUtils.readPomHeader( new File( m_file.getParentFile(), name ) );
+            }
+            return null;
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public File getFile()
+    {
+        return m_file;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public File getBasedir()
+    {
+        return m_file.getParentFile();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isBundleProject()
+    {
+        // local project, so can use very simple test based on packaging type
+        return getPackaging().indexOf( "bundle" ) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getBundleSymbolicName()
+    {
+        return getProperties().getProperty( "bundle.symbolicName" );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Properties getProperties()
+    {
+        XppPom fullPom = getUpgradedPom();
+        if( null != fullPom )
+        {
+            return fullPom.getProperties();
+        }
+
+        Properties properties = new Properties();
+        properties.putAll( m_properties );
+
+        return properties;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setParent( Pom pom, String relativePath, boolean overwrite )
+        throws ExistingElementException
+    {
+        getFullPom().setParent( pom, relativePath, overwrite );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setParent( MavenProject project, String relativePath, boolean overwrite )
+        throws ExistingElementException
+    {
+        getFullPom().setParent( project, relativePath, overwrite );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setGroupId( String newGroupId )
+    {
+        getFullPom().setGroupId( newGroupId );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setVersion( String newVersion )
+    {
+        getFullPom().setVersion( newVersion );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addRepository( Repository repository, boolean snapshots, boolean releases, boolean overwrite,
+        boolean pluginRepo )
+        throws ExistingElementException
+    {
+        getFullPom().addRepository( repository, snapshots, releases, overwrite, pluginRepo );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addModule( String module, boolean overwrite )
+        throws ExistingElementException
+    {
+        getFullPom().addModule( module, overwrite );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean removeModule( String module )
+    {
+        return getFullPom().removeModule( module );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addDependency( Dependency dependency, boolean overwrite )
+        throws ExistingElementException
+    {
+        getFullPom().addDependency( dependency, overwrite );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean updateDependencyGroup( Dependency dependency, String newGroupId )
+    {
+        return getFullPom().updateDependencyGroup( dependency, newGroupId );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean removeDependency( Dependency dependency )
+    {
+        return getFullPom().removeDependency( dependency );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addExclusion( String groupId, String artifactId, boolean overwrite )
+        throws ExistingElementException
+    {
+        getFullPom().addExclusion( groupId, artifactId, overwrite );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean removeExclusion( String groupId, String artifactId )
+    {
+        return getFullPom().removeExclusion( groupId, artifactId );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setProperty( String key, String value )
+    {
+        getFullPom().setProperty( key, value );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean updatePluginVersion( String groupId, String artifactId, String newVersion )
+    {
+        return getFullPom().updatePluginVersion( groupId, artifactId, newVersion );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void mergeSection( Pom pom, String fromSection, String toSection, boolean append )
+    {
+        getFullPom().mergeSection( pom, fromSection, toSection, append );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void overlayDetails( Pom pom )
+    {
+        getFullPom().overlayDetails( pom );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write()
+        throws IOException
+    {
+        getFullPom().write();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean equals( Object obj )
+    {
+        if( obj instanceof Pom )
+        {
+            return getId().equals( ( (Pom) obj ).getId() );
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode()
+    {
+        return getId().hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString()
+    {
+        return getId();
+    }
+}
@@ -0,0 +1,195 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Content-addressed cache of unpacked bundle entries. Each bundle gets its own directory named after its checksum, so
+ * unpacked entries can be shared between projects and builds until the bundle changes. Directories are populated
+ * somewhere else and then renamed into place, so readers only ever see complete directories.
+ */
+public final class UnpackCache
+{
+    /**
+     * Written last to mark a complete cache directory
+     */
+    private static final String MARKER_FILE = ".pax-unpacked";
+
+    /**
+     * How long cache directories are kept after they were last used, in milliseconds
+     */
+    public static final long MAX_UNUSED_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * Map of bundle location to "size|timestamp|checksum", to avoid re-calculating checksums in the same session
+     */
+    private static final Map CHECKSUMS = new HashMap();
+
+    /**
+     * Hide constructor for utility class
+     */
+    private UnpackCache()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * Find the cache directory for the current contents of the given bundle, which may not exist yet
+     *
+     * @param cacheDir base directory of the cache
+     * @param bundle jarfile
+     * @return directory holding unpacked entries from this bundle
+     * @throws IOException
+     */
+    public static File getUnpackDir( File cacheDir, File bundle )
+        throws IOException
+    {
+        File unpackDir = new File( cacheDir, getChecksum( bundle ) );
+
+        // record use, so the directory isn't pruned
+        unpackDir.setLastModified( System.currentTimeMillis() );
+
+        return unpackDir;
+    }
+
+    /**
+     * @param unpackDir directory holding unpacked entries from a bundle
+     * @return true if the directory is complete, otherwise false
+     */
+    public static boolean isUnpacked( File unpackDir )
+    {
+        return new File( unpackDir, MARKER_FILE ).isFile();
+    }
+
+    /**
+     * @param unpackDir directory that will hold unpacked entries from a bundle
+     * @return new private directory to unpack into, which can then be passed to {@link #publish(File, File)}
+     * @throws IOException
+     */
+    public static File createTempDir( File unpackDir )
+        throws IOException
+    {
+        File cacheDir = unpackDir.getParentFile();
+        cacheDir.mkdirs();
+
+        File tempDir = File.createTempFile( unpackDir.getName(), ".tmp", cacheDir );
+        if( !tempDir.delete() || !tempDir.mkdir() )
+        {
+            throw new IOException( "Unable to create directory " + tempDir );
+        }
+
+        return tempDir;
+    }
+
+    /**
+     * Mark a populated private directory as complete and move it into place. If some other build got there first then
+     * their copy is used and ours is thrown away.
+     *
+     * @param tempDir populated private directory, created by {@link #createTempDir(File)}
+     * @param unpackDir directory that will hold unpacked entries from a bundle
+     * @throws IOException
+     */
+    public static void publish( File tempDir, File unpackDir )
+        throws IOException
+    {
+        try
+        {
+            // the marker must be the last thing written
+            if( !new File( tempDir, MARKER_FILE ).createNewFile() )
+            {
+                throw new IOException( "Unable to mark " + tempDir + " as complete" );
+            }
+
+            if( !tempDir.renameTo( unpackDir ) && !isUnpacked( unpackDir ) )
+            {
+                throw new IOException( "Unable to rename " + tempDir + " to " + unpackDir );
+            }
+        }
+        finally
+        {
+            if( tempDir.exists() )
+            {
+                FileUtils.deleteDirectory( tempDir );
+            }
+        }
+    }
+
+    /**
+     * Remove cache directories that haven't been used recently, along with any abandoned private directories
+     *
+     * @param cacheDir base directory of the cache
+     * @param maxAge how long an unused directory is kept, in milliseconds
+     */
+    public static void prune( File cacheDir, long maxAge )
+    {
+        long cutoff = System.currentTimeMillis() - maxAge;
+
+        File[] dirs = cacheDir.listFiles();
+        for( int i = 0; null != dirs && i < dirs.length; i++ )
+        {
+            if( dirs[i].isDirectory() && dirs[i].lastModified() < cutoff )
+            {
+                try
+                {
+                    FileUtils.deleteDirectory( dirs[i] );
+                }
+                catch( IOException e )
+                {
+                    // not fatal, try again next time
+                }
+            }
+        }
+    }
+
+    /**
+     * @param bundle jarfile
+     * @return checksum of the bundle, only re-calculated when its size or timestamp changes
+     * @throws IOException
+     */
+    private static String getChecksum( File bundle )
+        throws IOException
+    {
+        String key = bundle.getAbsolutePath();
+        String metadata = bundle.length() + "|" + bundle.lastModified() + "|";
+
+        synchronized( CHECKSUMS )
+        {
+            String cached = (String) CHECKSUMS.get( key );
+            if( null != cached && cached.startsWith( metadata ) )
+            {
+                return cached.substring( metadata.length() );
+            }
+        }
+
+        String checksum = DirUtils.calculateChecksum( bundle );
+
+        synchronized( CHECKSUMS )
+        {
+            CHECKSUMS.put( key, metadata + checksum );
+        }
+
+        return checksum;
+    }
+}
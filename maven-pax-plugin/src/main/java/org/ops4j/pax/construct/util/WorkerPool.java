@@ -0,0 +1,241 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.LinkedList;
+
+/**
+ * Simple bounded pool of worker threads (works on older JDKs without java.util.concurrent). Tasks may submit further
+ * tasks to the same pool, and {@link #join()} waits until every submitted task has completed.
+ */
+public class WorkerPool
+{
+    /**
+     * Prefix used when naming worker threads
+     */
+    private final String m_name;
+
+    /**
+     * Maximum number of worker threads
+     */
+    private final int m_maxThreads;
+
+    /**
+     * Tasks waiting for a worker
+     */
+    private final LinkedList m_queue;
+
+    /**
+     * Number of worker threads started so far
+     */
+    private int m_threadCount;
+
+    /**
+     * Number of worker threads waiting for tasks
+     */
+    private int m_idleCount;
+
+    /**
+     * Number of tasks submitted but not yet completed
+     */
+    private int m_pendingCount;
+
+    /**
+     * First problem reported by a task
+     */
+    private Throwable m_failure;
+
+    /**
+     * True once the pool has been shutdown
+     */
+    private boolean m_shutdown;
+
+    /**
+     * @param name prefix used when naming worker threads
+     * @param maxThreads maximum number of worker threads, values below one are treated as one
+     */
+    public WorkerPool( String name, int maxThreads )
+    {
+        m_name = name;
+        m_maxThreads = Math.max( 1, maxThreads );
+        m_queue = new LinkedList();
+    }
+
+    /**
+     * @param threads requested number of threads, zero or less means use all available processors
+     * @return number of worker threads to use
+     */
+    public static int getWorkerCount( int threads )
+    {
+        if( threads > 0 )
+        {
+            return threads;
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Queue a task for execution by the next available worker
+     *
+     * @param task the task to run
+     */
+    public synchronized void execute( Runnable task )
+    {
+        if( m_shutdown )
+        {
+            throw new IllegalStateException( "Worker pool " + m_name + " has been shutdown" );
+        }
+
+        m_queue.addLast( task );
+        m_pendingCount++;
+
+        if( 0 == m_idleCount && m_threadCount < m_maxThreads )
+        {
+            Thread worker = new Thread( new Worker(), m_name + '-' + ( ++m_threadCount ) );
+            worker.setDaemon( true );
+            worker.start();
+        }
+        else
+        {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait for all submitted tasks to complete, including any tasks they submitted along the way
+     *
+     * @throws RuntimeException the first problem reported by a task
+     */
+    public synchronized void join()
+    {
+        while( m_pendingCount > 0 )
+        {
+            try
+            {
+                wait();
+            }
+            catch( InterruptedException e )
+            {
+                throw new RuntimeException( "Interrupted while waiting for " + m_name + " workers" );
+            }
+        }
+
+        if( m_failure instanceof RuntimeException )
+        {
+            throw (RuntimeException) m_failure;
+        }
+        else if( m_failure instanceof Error )
+        {
+            throw (Error) m_failure;
+        }
+    }
+
+    /**
+     * Release all worker threads once they have finished their current tasks
+     */
+    public synchronized void shutdown()
+    {
+        m_shutdown = true;
+        notifyAll();
+    }
+
+    /**
+     * @return next task, null if the pool has been shutdown
+     */
+    synchronized Runnable nextTask()
+    {
+        while( m_queue.isEmpty() && !m_shutdown )
+        {
+            m_idleCount++;
+            try
+            {
+                wait();
+            }
+            catch( InterruptedException e )
+            {
+                return null;
+            }
+            finally
+            {
+                m_idleCount--;
+            }
+        }
+
+        if( m_queue.isEmpty() )
+        {
+            return null;
+        }
+
+        return (Runnable) m_queue.removeFirst();
+    }
+
+    /**
+     * @param failure problem reported by the task, null if it completed normally
+     */
+    synchronized void taskDone( Throwable failure )
+    {
+        m_pendingCount--;
+
+        if( null != failure && null == m_failure )
+        {
+            m_failure = failure;
+
+            // no point continuing, so drop any outstanding work
+            m_pendingCount -= m_queue.size();
+            m_queue.clear();
+        }
+
+        if( 0 == m_pendingCount )
+        {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Worker loop that runs queued tasks until the pool is shutdown
+     */
+    private final class Worker
+        implements Runnable
+    {
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            for( Runnable task = nextTask(); null != task; task = nextTask() )
+            {
+                Throwable failure = null;
+                try
+                {
+                    task.run();
+                }
+                catch( RuntimeException e )
+                {
+                    failure = e;
+                }
+                catch( Error e )
+                {
+                    failure = e;
+                }
+                finally
+                {
+                    taskDone( failure );
+                }
+            }
+        }
+    }
+}
@@ -67,6 +67,13 @@ public class XppPom
         // protect against changes in working directory
         m_file = DirUtils.resolveFile( pomFile, true );
 
+        // re-use earlier parse if the file hasn't changed
+        m_pom = PomCache.lookup( m_file );
+        if( null != m_pom )
+        {
+            return;
+        }
+
         try
         {
             XmlPullParser parser = RoundTripXml.createParser();
@@ -76,6 +83,8 @@ public class XppPom
             m_pom = Xpp3DomBuilder.build( parser, false );
 
             IOUtil.close( reader );
+
+            PomCache.store( m_file, m_pom );
         }
         catch( XmlPullParserException e )
         {
@@ -229,7 +238,7 @@ public class XppPom
             File baseDir = getBasedir();
 
             // check it really does contain our current project
-            Pom pom = PomUtils.readPom( baseDir.getParentFile() );
+            Pom pom = PomUtils.readPomHeader( baseDir.getParentFile() );
             if( pom.getModuleNames().contains( baseDir.getName() ) )
             {
                 return pom;
@@ -252,7 +261,7 @@ public class XppPom
             // check it really is a valid module
             if( getModuleNames().contains( name ) )
             {
-                return PomUtils.readPom( new File( m_file.getParentFile(), name ) );
+                return PomUtils.readPomHeader( new File( m_file.getParentFile(), name ) );
             }
             return null;
         }
@@ -713,12 +722,7 @@ public class XppPom
      */
     public void mergeSection( Pom pom, String fromSection, String toSection, boolean append )
     {
-        if( !( pom instanceof XppPom ) )
-        {
-            throw new IllegalArgumentException( "Unable to merge POM type " + pom.getClass() );
-        }
-
-        mergeSection( ( (XppPom) pom ).m_pom, fromSection, toSection, append );
+        mergeSection( toXppPom( pom, "merge" ).m_pom, fromSection, toSection, append );
     }
 
     /**
@@ -775,12 +779,7 @@ public class XppPom
      */
     public void overlayDetails( Pom pom )
     {
-        if( !( pom instanceof XppPom ) )
-        {
-            throw new IllegalArgumentException( "Unable to overlay POM type " + pom.getClass() );
-        }
-
-        Xpp3Dom overlay = ( (XppPom) pom ).m_pom;
+        Xpp3Dom overlay = toXppPom( pom, "overlay" ).m_pom;
         Xpp3Dom project = new Xpp3Dom( "project" );
 
         // record before we drop any elements
@@ -825,6 +824,25 @@ public class XppPom
         }
     }
 
+    /**
+     * @param pom another Maven project
+     * @param action action being performed, used when reporting unsupported POM types
+     * @return the full round-trip model for the project
+     */
+    private static XppPom toXppPom( Pom pom, String action )
+    {
+        if( pom instanceof XppPom )
+        {
+            return (XppPom) pom;
+        }
+        else if( pom instanceof StreamingPom )
+        {
+            return ( (StreamingPom) pom ).getFullPom();
+        }
+
+        throw new IllegalArgumentException( "Unable to " + action + " POM type " + pom.getClass() );
+    }
+
     /**
      * @param fragment existing XML fragment
      */
@@ -863,6 +881,8 @@ public class XppPom
         serializer.endDocument();
 
         IOUtil.close( writer );
+
+        PomCache.invalidate( m_file );
     }
 
     /**
@@ -998,9 +1018,9 @@ public class XppPom
      */
     public boolean equals( Object obj )
     {
-        if( obj instanceof XppPom )
+        if( obj instanceof Pom )
         {
-            return getId().equals( ( (XppPom) obj ).getId() );
+            return getId().equals( ( (Pom) obj ).getId() );
         }
         return false;
     }
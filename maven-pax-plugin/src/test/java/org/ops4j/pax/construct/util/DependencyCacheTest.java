@@ -0,0 +1,289 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2010 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.DefaultArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+public class DependencyCacheTest extends TestCase
+{
+    private int m_buildCount;
+
+    private File m_localDir;
+
+    private ArtifactRepository m_localRepo;
+
+    protected void setUp()
+        throws Exception
+    {
+        m_localDir = new File( System.getProperty( "java.io.tmpdir" ), "pax-dependency-cache-" + getName() );
+        FileUtils.deleteDirectory( m_localDir );
+
+        m_localRepo = new DefaultArtifactRepository( "local", m_localDir.toURI().toString(),
+            new DefaultRepositoryLayout() );
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        // save now, so nothing is written to this repository after it's gone
+        DependencyCache.flush();
+        FileUtils.deleteDirectory( m_localDir );
+    }
+
+    public void testCachedRoundTripKeepsDependencyDetails()
+        throws Exception
+    {
+        MavenProjectBuilder builder = newProjectBuilder();
+        ArtifactFactory factory = (ArtifactFactory) newStub( ArtifactFactory.class );
+        Artifact pomArtifact = newPomArtifact( "roundtrip", "1.0" );
+
+        DependencyCache.buildFromRepository( builder, factory, pomArtifact, null, m_localRepo );
+        MavenProject cached = DependencyCache.buildFromRepository( builder, factory, pomArtifact, null, m_localRepo );
+
+        assertEquals( "Project only built once", 1, m_buildCount );
+
+        List dependencies = cached.getDependencies();
+        assertEquals( 2, dependencies.size() );
+
+        Dependency system = (Dependency) dependencies.get( 0 );
+        assertEquals( "com.sun", system.getGroupId() );
+        assertEquals( "tools", system.getArtifactId() );
+        assertEquals( "1.5", system.getVersion() );
+        assertEquals( "system", system.getScope() );
+        assertEquals( "C:\\jdk:5\\lib\\tools.jar", system.getSystemPath() );
+        assertEquals( 0, system.getExclusions().size() );
+
+        Dependency excluding = (Dependency) dependencies.get( 1 );
+        assertEquals( "org.example", excluding.getGroupId() );
+        assertEquals( "excluding", excluding.getArtifactId() );
+        assertEquals( "[1.0,2.0)", excluding.getVersion() );
+        assertEquals( "test-jar", excluding.getType() );
+        assertEquals( "tests", excluding.getClassifier() );
+        assertEquals( "provided", excluding.getScope() );
+        assertTrue( excluding.isOptional() );
+        assertNull( excluding.getSystemPath() );
+
+        List exclusions = excluding.getExclusions();
+        assertEquals( 2, exclusions.size() );
+        assertEquals( "commons-logging", ( (Exclusion) exclusions.get( 0 ) ).getGroupId() );
+        assertEquals( "commons-logging", ( (Exclusion) exclusions.get( 0 ) ).getArtifactId() );
+        assertEquals( "log4j", ( (Exclusion) exclusions.get( 1 ) ).getGroupId() );
+        assertEquals( "log4j", ( (Exclusion) exclusions.get( 1 ) ).getArtifactId() );
+    }
+
+    public void testFlushSavesCurrentEncoding()
+        throws Exception
+    {
+        MavenProjectBuilder builder = newProjectBuilder();
+        ArtifactFactory factory = (ArtifactFactory) newStub( ArtifactFactory.class );
+        Artifact pomArtifact = newPomArtifact( "flush", "1.0" );
+
+        DependencyCache.buildFromRepository( builder, factory, pomArtifact, null, m_localRepo );
+        DependencyCache.flush();
+
+        Properties cache = readCache();
+
+        String key = pomArtifact.getGroupId() + ":flush:1.0!dependency.";
+
+        assertEquals( "2", cache.getProperty( pomArtifact.getGroupId() + ":flush:1.0!dependencies" ) );
+        assertEquals( "com.sun:tools:1.5:jar::system:false::C:\\jdk:5\\lib\\tools.jar", cache.getProperty( key + 0 ) );
+        assertEquals( "org.example:excluding:[1.0,2.0):test-jar:tests:provided:true:"
+            + "commons-logging/commons-logging,log4j/log4j:", cache.getProperty( key + 1 ) );
+    }
+
+    public void testIncompleteEntryIsRebuilt()
+        throws Exception
+    {
+        MavenProjectBuilder builder = newProjectBuilder();
+        ArtifactFactory factory = (ArtifactFactory) newStub( ArtifactFactory.class );
+        Artifact pomArtifact = newPomArtifact( "incomplete", "1.0" );
+
+        String key = pomArtifact.getGroupId() + ":incomplete:1.0";
+
+        Properties cache = new Properties();
+        cache.setProperty( key, Long.toString( System.currentTimeMillis() ) );
+        cache.setProperty( key + "!version", "1.0" );
+        cache.setProperty( key + "!dependencies", "2" );
+        cache.setProperty( key + "!dependency.0", "com.sun:tools:1.5:jar::system:false::/lib/tools.jar" );
+        writeCache( cache );
+
+        MavenProject project = DependencyCache.buildFromRepository( builder, factory, pomArtifact, null, m_localRepo );
+
+        assertEquals( "Incomplete entry was rebuilt", 1, m_buildCount );
+        assertEquals( 2, project.getDependencies().size() );
+    }
+
+    public void testFlushKeepsEntriesSavedElsewhere()
+        throws Exception
+    {
+        MavenProjectBuilder builder = newProjectBuilder();
+        ArtifactFactory factory = (ArtifactFactory) newStub( ArtifactFactory.class );
+        Artifact pomArtifact = newPomArtifact( "ours", "1.0" );
+
+        // load the (empty) cache before another build saves its entry
+        DependencyCache.buildFromRepository( builder, factory, pomArtifact, null, m_localRepo );
+
+        String other = pomArtifact.getGroupId() + ":other:1.0";
+
+        Properties saved = new Properties();
+        saved.setProperty( other, Long.toString( System.currentTimeMillis() ) );
+        saved.setProperty( other + "!version", "1.0" );
+        saved.setProperty( other + "!dependencies", "0" );
+        writeCache( saved );
+
+        DependencyCache.flush();
+
+        Properties cache = readCache();
+        assertEquals( "0", cache.getProperty( other + "!dependencies" ) );
+        assertEquals( "2", cache.getProperty( pomArtifact.getGroupId() + ":ours:1.0!dependencies" ) );
+    }
+
+    private File getCacheFile()
+    {
+        return new File( m_localDir, ".cache/pax-construct/dependencies.properties" );
+    }
+
+    private Properties readCache()
+        throws Exception
+    {
+        Properties cache = new Properties();
+        InputStream in = new FileInputStream( getCacheFile() );
+        try
+        {
+            cache.load( in );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        return cache;
+    }
+
+    private void writeCache( Properties cache )
+        throws Exception
+    {
+        getCacheFile().getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream( getCacheFile() );
+        try
+        {
+            cache.store( out, null );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    private MavenProjectBuilder newProjectBuilder()
+    {
+        return (MavenProjectBuilder) Proxy.newProxyInstance( getClass().getClassLoader(), new Class[]
+        {
+            MavenProjectBuilder.class
+        }, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args )
+            {
+                m_buildCount++;
+
+                Artifact pomArtifact = (Artifact) args[0];
+
+                Model model = new Model();
+                model.setGroupId( pomArtifact.getGroupId() );
+                model.setArtifactId( pomArtifact.getArtifactId() );
+                model.setVersion( pomArtifact.getVersion() );
+                model.setPackaging( "bundle" );
+
+                Dependency system = new Dependency();
+                system.setGroupId( "com.sun" );
+                system.setArtifactId( "tools" );
+                system.setVersion( "1.5" );
+                system.setScope( "system" );
+                system.setSystemPath( "C:\\jdk:5\\lib\\tools.jar" );
+                model.addDependency( system );
+
+                Dependency excluding = new Dependency();
+                excluding.setGroupId( "org.example" );
+                excluding.setArtifactId( "excluding" );
+                excluding.setVersion( "[1.0,2.0)" );
+                excluding.setType( "test-jar" );
+                excluding.setClassifier( "tests" );
+                excluding.setScope( "provided" );
+                excluding.setOptional( true );
+                excluding.addExclusion( newExclusion( "commons-logging", "commons-logging" ) );
+                excluding.addExclusion( newExclusion( "log4j", "log4j" ) );
+                model.addDependency( excluding );
+
+                return new MavenProject( model );
+            }
+        } );
+    }
+
+    private static Exclusion newExclusion( String groupId, String artifactId )
+    {
+        Exclusion exclusion = new Exclusion();
+        exclusion.setGroupId( groupId );
+        exclusion.setArtifactId( artifactId );
+        return exclusion;
+    }
+
+    private static Object newStub( Class clazz )
+    {
+        return Proxy.newProxyInstance( DependencyCacheTest.class.getClassLoader(), new Class[]
+        {
+            clazz
+        }, new InvocationHandler()
+        {
+            public Object invoke( Object proxy, Method method, Object[] args )
+            {
+                return null;
+            }
+        } );
+    }
+
+    private Artifact newPomArtifact( String artifactId, String version )
+    {
+        return new DefaultArtifact( "org.example." + getName(), artifactId, VersionRange.createFromVersion( version ),
+            null, "pom", null, new DefaultArtifactHandler( "pom" ) );
+    }
+}